@@ -0,0 +1,106 @@
+package com.example.gitlabcommitlog.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "api-resilience")
+public class ApiResilienceProperties {
+    /**
+     * Attempts per API request, the first one included, before a retryable failure is given up on.
+     */
+    private int maxAttempts = 5;
+    /**
+     * Backoff before the first retry; it doubles with every further attempt up to {@code maxBackoff}, and each
+     * wait is drawn at random between half and all of it.
+     */
+    private Duration initialBackoff = Duration.ofSeconds(1);
+    private Duration maxBackoff = Duration.ofSeconds(30);
+    /**
+     * Longest {@code Retry-After} or rate-limit reset that is waited out; a longer one fails the request.
+     */
+    private Duration maxRetryAfter = Duration.ofMinutes(5);
+    /**
+     * Consecutive server errors or I/O failures after which requests to a host are paused.
+     */
+    private int circuitFailureThreshold = 5;
+    /**
+     * How long requests to a host are paused once its circuit opens.
+     */
+    private Duration circuitOpenDuration = Duration.ofSeconds(30);
+    /**
+     * Send a second, identical request when the first has not answered within this delay and use whichever
+     * answers first. Hedges spend API budget, so it is off (zero) by default.
+     */
+    private Duration hedgeDelay = Duration.ZERO;
+    /**
+     * Requests in flight at a time while hedging is on; requests beyond it are sent without a hedge.
+     */
+    private int hedgeThreads = 32;
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public void setInitialBackoff(Duration initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(Duration maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    public Duration getMaxRetryAfter() {
+        return maxRetryAfter;
+    }
+
+    public void setMaxRetryAfter(Duration maxRetryAfter) {
+        this.maxRetryAfter = maxRetryAfter;
+    }
+
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+
+    public void setCircuitFailureThreshold(int circuitFailureThreshold) {
+        this.circuitFailureThreshold = circuitFailureThreshold;
+    }
+
+    public Duration getCircuitOpenDuration() {
+        return circuitOpenDuration;
+    }
+
+    public void setCircuitOpenDuration(Duration circuitOpenDuration) {
+        this.circuitOpenDuration = circuitOpenDuration;
+    }
+
+    public Duration getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    public void setHedgeDelay(Duration hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    public int getHedgeThreads() {
+        return hedgeThreads;
+    }
+
+    public void setHedgeThreads(int hedgeThreads) {
+        this.hedgeThreads = hedgeThreads;
+    }
+}
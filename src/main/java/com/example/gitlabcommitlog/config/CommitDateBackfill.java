@@ -0,0 +1,91 @@
+package com.example.gitlabcommitlog.config;
+
+import com.example.gitlabcommitlog.model.CommitRecord;
+import com.example.gitlabcommitlog.model.GitlabCommitRecord;
+import com.example.gitlabcommitlog.model.SharedCommit;
+import com.example.gitlabcommitlog.service.SharedCommitStore;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Fills in {@code committedTime} and {@code committedDay} on commits stored before they existed, parsing the
+ * stored {@code committedAt} string once. Runs once the application is up and only touches documents that
+ * still lack the native date, so it is a no-op after the first run.
+ */
+@Component
+public class CommitDateBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(CommitDateBackfill.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+
+    public CommitDateBackfill(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        for (Class<?> type : List.of(SharedCommit.class, CommitRecord.class, GitlabCommitRecord.class)) {
+            String collection = mongoTemplate.getCollectionName(type);
+            try {
+                long updated = backfill(collection);
+                if (updated > 0) {
+                    logger.info("Backfilled commit dates, collection={}, documents={}", collection, updated);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to backfill commit dates for collection {}", collection, e);
+                return;
+            }
+        }
+    }
+
+    private long backfill(String collection) {
+        Query query = new Query(Criteria.where("committedTime").exists(false).and("committedAt").ne(null));
+        query.fields().include("committedAt");
+        query.cursorBatchSize(BATCH_SIZE);
+        long updated = 0;
+        BulkOperations bulk = null;
+        int pending = 0;
+        try (Stream<Document> documents = mongoTemplate.stream(query, Document.class, collection)) {
+            for (Document document : (Iterable<Document>) documents::iterator) {
+                OffsetDateTime committed;
+                try {
+                    committed = OffsetDateTime.parse(document.getString("committedAt"));
+                } catch (DateTimeParseException e) {
+                    continue;
+                }
+                if (bulk == null) {
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+                }
+                bulk.updateOne(new Query(Criteria.where("_id").is(document.get("_id"))), new Update()
+                        .set("committedTime", committed.toInstant())
+                        .set("committedDay", SharedCommitStore.dayKey(committed.toLocalDate())));
+                if (++pending == BATCH_SIZE) {
+                    bulk.execute();
+                    updated += pending;
+                    bulk = null;
+                    pending = 0;
+                }
+            }
+        }
+        if (bulk != null) {
+            bulk.execute();
+            updated += pending;
+        }
+        return updated;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.gitlabcommitlog.config;
+
+import com.example.gitlabcommitlog.model.CommitRecord;
+import com.example.gitlabcommitlog.model.GitlabCommitRecord;
+import com.example.gitlabcommitlog.model.SharedCommit;
+import com.example.gitlabcommitlog.service.SharedCommitStore;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Copies the message and link of the shared commit onto membership rows stored without them, so the rows can be
+ * found through their per-token text index. Only touches rows that still lack a message, so it is a no-op after
+ * the first run.
+ */
+@Component
+public class CommitMessageBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(CommitMessageBackfill.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final SharedCommitStore sharedCommits;
+
+    public CommitMessageBackfill(MongoTemplate mongoTemplate, SharedCommitStore sharedCommits) {
+        this.mongoTemplate = mongoTemplate;
+        this.sharedCommits = sharedCommits;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        for (Class<?> type : List.of(CommitRecord.class, GitlabCommitRecord.class)) {
+            String collection = mongoTemplate.getCollectionName(type);
+            try {
+                long updated = backfill(collection);
+                if (updated > 0) {
+                    logger.info("Backfilled commit messages, collection={}, documents={}", collection, updated);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to backfill commit messages for collection {}", collection, e);
+                return;
+            }
+        }
+    }
+
+    private long backfill(String collection) {
+        Query query = new Query(Criteria.where("message").is(null).and("commitKey").ne(null));
+        query.fields().include("commitKey");
+        query.cursorBatchSize(BATCH_SIZE);
+        long updated = 0;
+        List<Document> batch = new ArrayList<>(BATCH_SIZE);
+        try (Stream<Document> documents = mongoTemplate.stream(query, Document.class, collection)) {
+            for (Document document : (Iterable<Document>) documents::iterator) {
+                batch.add(document);
+                if (batch.size() == BATCH_SIZE) {
+                    updated += copyMessages(collection, batch);
+                    batch.clear();
+                }
+            }
+        }
+        return updated + copyMessages(collection, batch);
+    }
+
+    private long copyMessages(String collection, List<Document> rows) {
+        Map<String, SharedCommit> shared = sharedCommits.findByKeys(rows.stream()
+                .map(row -> row.getString("commitKey"))
+                .toList());
+        BulkOperations bulk = null;
+        long pending = 0;
+        for (Document row : rows) {
+            SharedCommit commit = shared.get(row.getString("commitKey"));
+            if (commit == null || commit.getMessage() == null) {
+                continue;
+            }
+            if (bulk == null) {
+                bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+            }
+            bulk.updateOne(new Query(Criteria.where("_id").is(row.get("_id"))), new Update()
+                    .set("message", commit.getMessage())
+                    .set("url", commit.getUrl()));
+            pending++;
+        }
+        if (bulk != null) {
+            bulk.execute();
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.gitlabcommitlog.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "heatmap")
+public class HeatmapProperties {
+    /**
+     * File the in-memory daily counts are snapshotted to and restored from on startup; blank disables snapshots.
+     */
+    private String snapshotPath = "data/heatmap-store.bin";
+    /**
+     * How often changed counts are written to the snapshot. The snapshot is also written on shutdown.
+     */
+    private Duration snapshotInterval = Duration.ofMinutes(1);
+
+    public String getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    public void setSnapshotPath(String snapshotPath) {
+        this.snapshotPath = snapshotPath;
+    }
+
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(Duration snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.gitlabcommitlog.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+
+/**
+ * HTTP transport for the GitHub and GitLab clients. Both variants keep connections alive across
+ * requests; gzip is negotiated by {@link GzipDecompressingInterceptor} independently of the transport.
+ */
+@Configuration
+public class HttpClientConfig {
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "http-client", name = "transport", havingValue = "apache", matchIfMissing = true)
+    public PoolingHttpClientConnectionManager apiConnectionManager(HttpClientProperties properties,
+                                                                   MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(properties.getMaxConnections())
+                .setMaxConnPerRoute(properties.getMaxConnectionsPerHost())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(properties.getConnectTimeout()))
+                        .setSocketTimeout(Timeout.of(properties.getReadTimeout()))
+                        .build())
+                .build();
+        properties.getHostMaxConnections().forEach((baseUrl, max) ->
+                connectionManager.setMaxPerRoute(toRoute(baseUrl), max));
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "git-api").bindTo(meterRegistry);
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "http-client", name = "transport", havingValue = "apache", matchIfMissing = true)
+    public CloseableHttpClient apiHttpClient(PoolingHttpClientConnectionManager apiConnectionManager,
+                                             HttpClientProperties properties) {
+        return HttpClients.custom()
+                .setConnectionManager(apiConnectionManager)
+                .disableContentCompression()
+                // ApiResilience is the only retry layer, bounded by its attempts, Retry-After cap and the deadline.
+                .disableAutomaticRetries()
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(properties.getIdleTimeout()))
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "http-client", name = "transport", havingValue = "apache", matchIfMissing = true)
+    public ClientHttpRequestFactory apacheRequestFactory(CloseableHttpClient apiHttpClient) {
+        return new HttpComponentsClientHttpRequestFactory(apiHttpClient);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "http-client", name = "transport", havingValue = "jdk")
+    public ClientHttpRequestFactory jdkRequestFactory(HttpClientProperties properties) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(properties.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(properties.getReadTimeout());
+        return requestFactory;
+    }
+
+    private static HttpRoute toRoute(String baseUrl) {
+        URI uri = URI.create(baseUrl);
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+        return new HttpRoute(new HttpHost(uri.getScheme(), uri.getHost(), port), null, secure);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.gitlabcommitlog.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "http-client")
+public class HttpClientProperties {
+    /**
+     * Transport used by the API clients: {@code apache} (pooled HttpClient 5) or {@code jdk} (java.net.http, HTTP/2).
+     */
+    private String transport = "apache";
+    private Duration connectTimeout = Duration.ofSeconds(15);
+    private Duration readTimeout = Duration.ofSeconds(60);
+    private Duration idleTimeout = Duration.ofSeconds(30);
+    private int maxConnections = 64;
+    private int maxConnectionsPerHost = 16;
+    /**
+     * Per-host pool size overrides keyed by base URL, e.g. {@code https://api.github.com}. Apache transport only.
+     */
+    private Map<String, Integer> hostMaxConnections = new HashMap<>();
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public Map<String, Integer> getHostMaxConnections() {
+        return hostMaxConnections;
+    }
+
+    public void setHostMaxConnections(Map<String, Integer> hostMaxConnections) {
+        this.hostMaxConnections = hostMaxConnections;
+    }
+}
@@ -1,18 +1,19 @@
 package com.example.gitlabcommitlog.config;
 
+import com.example.gitlabcommitlog.service.SyncProfiler;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.web.client.RestTemplate;
 
-import java.time.Duration;
-
 @Configuration
 public class RestTemplateConfig {
     @Bean
-    public RestTemplate restTemplate(RestTemplateBuilder builder, GithubProperties properties) {
+    public RestTemplate restTemplate(RestTemplateBuilder builder, GithubProperties properties,
+                                     ClientHttpRequestFactory requestFactory, SyncProfiler profiler) {
         ClientHttpRequestInterceptor authInterceptor = (request, body, execution) -> {
             HttpHeaders headers = request.getHeaders();
             if (properties.getToken() != null && !properties.getToken().isEmpty()) {
@@ -24,9 +25,9 @@ public class RestTemplateConfig {
         };
 
         return builder
-                .setConnectTimeout(Duration.ofSeconds(15))
-                .setReadTimeout(Duration.ofSeconds(60))
-                .additionalInterceptors(authInterceptor)
+                .requestFactory(() -> requestFactory)
+                .additionalInterceptors(authInterceptor, new GzipDecompressingInterceptor(),
+                        new ResponseSizeInterceptor(profiler::recordResponseBytes))
                 .build();
     }
 }
@@ -0,0 +1,147 @@
+package com.example.gitlabcommitlog.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "sync")
+public class SyncProperties {
+    /**
+     * How long stored project metadata (languages) is trusted before it is fetched again.
+     */
+    private Duration metadataTtl = Duration.ofDays(7);
+    /**
+     * Only ingest commits authored by the token's own user, filtered by the provider API.
+     */
+    private boolean authorScope = false;
+    /**
+     * Fetch tasks of one token running at the same time, across all of its syncs, however many fetch threads
+     * are free.
+     */
+    private int fetchConcurrency = 4;
+    /**
+     * Fetch workers shared by all syncs running on this instance, handed out fairly between tokens.
+     */
+    private int fetchThreads = 8;
+    /**
+     * Syncs requested through the API that run at the same time; further ones queue.
+     */
+    private int maxConcurrentRuns = 4;
+    /**
+     * Share of the fetch workers a sync requested through the API gets relative to a background refresh.
+     */
+    private int interactiveWeight = 4;
+    /**
+     * Time an interactive sync of a recent range may take before it answers with what it ingested so far and
+     * leaves the remaining repositories to a background sync.
+     */
+    private Duration interactiveBudget = Duration.ofSeconds(20);
+    /**
+     * Fetched pages waiting to be written; once it is full, fetchers wait without holding a fetch thread.
+     */
+    private int queueCapacity = 32;
+    /**
+     * Lifetime of a token lease or repository claim that is not renewed; a crashed instance's work is taken
+     * over once it elapses. Held leases are renewed every third of it.
+     */
+    private Duration leaseTtl = Duration.ofSeconds(30);
+    /**
+     * How often an instance looks for repository work published by syncs running on other instances.
+     */
+    private Duration workPollInterval = Duration.ofSeconds(2);
+    /**
+     * Age after which a token's data is refreshed in the background when it is fetched; the stored data is
+     * still served straight away.
+     */
+    private Duration freshness = Duration.ofHours(1);
+
+    public Duration getMetadataTtl() {
+        return metadataTtl;
+    }
+
+    public void setMetadataTtl(Duration metadataTtl) {
+        this.metadataTtl = metadataTtl;
+    }
+
+    public boolean isAuthorScope() {
+        return authorScope;
+    }
+
+    public void setAuthorScope(boolean authorScope) {
+        this.authorScope = authorScope;
+    }
+
+    public int getFetchConcurrency() {
+        return fetchConcurrency;
+    }
+
+    public void setFetchConcurrency(int fetchConcurrency) {
+        this.fetchConcurrency = fetchConcurrency;
+    }
+
+    public int getFetchThreads() {
+        return fetchThreads;
+    }
+
+    public void setFetchThreads(int fetchThreads) {
+        this.fetchThreads = fetchThreads;
+    }
+
+    public int getMaxConcurrentRuns() {
+        return maxConcurrentRuns;
+    }
+
+    public void setMaxConcurrentRuns(int maxConcurrentRuns) {
+        this.maxConcurrentRuns = maxConcurrentRuns;
+    }
+
+    public int getInteractiveWeight() {
+        return interactiveWeight;
+    }
+
+    public void setInteractiveWeight(int interactiveWeight) {
+        this.interactiveWeight = interactiveWeight;
+    }
+
+    public Duration getInteractiveBudget() {
+        return interactiveBudget;
+    }
+
+    public void setInteractiveBudget(Duration interactiveBudget) {
+        this.interactiveBudget = interactiveBudget;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public Duration getLeaseTtl() {
+        return leaseTtl;
+    }
+
+    public void setLeaseTtl(Duration leaseTtl) {
+        this.leaseTtl = leaseTtl;
+    }
+
+    public Duration getWorkPollInterval() {
+        return workPollInterval;
+    }
+
+    public void setWorkPollInterval(Duration workPollInterval) {
+        this.workPollInterval = workPollInterval;
+    }
+
+    public Duration getFreshness() {
+        return freshness;
+    }
+
+    public void setFreshness(Duration freshness) {
+        this.freshness = freshness;
+    }
+}
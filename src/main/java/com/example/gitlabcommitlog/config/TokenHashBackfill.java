@@ -0,0 +1,100 @@
+package com.example.gitlabcommitlog.config;
+
+import com.example.gitlabcommitlog.model.CommitDayCount;
+import com.example.gitlabcommitlog.model.CommitHourCount;
+import com.example.gitlabcommitlog.model.CommitRollup;
+import com.example.gitlabcommitlog.model.ProjectCatalog;
+import com.example.gitlabcommitlog.model.SyncCheckpoint;
+import com.example.gitlabcommitlog.model.SyncLease;
+import com.example.gitlabcommitlog.model.SyncState;
+import com.example.gitlabcommitlog.model.SyncWorkItem;
+import com.example.gitlabcommitlog.service.SyncProfiler;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Removes raw tokens from the sync coordination and aggregate collections, which are keyed by the token's hash.
+ * Sync states are re-keyed; leases, work items, checkpoints, counts, rollups and catalogs are dropped, as they
+ * expire or are rebuilt from the commit rows on the next read or sync. Indexes on the old field are dropped too.
+ */
+@Component
+public class TokenHashBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(TokenHashBackfill.class);
+    private static final List<Class<?>> REBUILT_TYPES = List.of(SyncLease.class, SyncWorkItem.class,
+            SyncCheckpoint.class, CommitDayCount.class, CommitHourCount.class, CommitRollup.class,
+            ProjectCatalog.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    public TokenHashBackfill(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            long states = rekeyStates();
+            if (states > 0) {
+                logger.info("Re-keyed sync states by token hash, states={}", states);
+            }
+            for (Class<?> type : REBUILT_TYPES) {
+                String collection = mongoTemplate.getCollectionName(type);
+                long removed = mongoTemplate.remove(legacy(), collection).getDeletedCount();
+                if (removed > 0) {
+                    logger.info("Removed documents keyed by raw token, collection={}, documents={}", collection,
+                            removed);
+                }
+            }
+            for (Class<?> type : REBUILT_TYPES) {
+                dropTokenIndexes(type);
+            }
+            dropTokenIndexes(SyncState.class);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to replace raw tokens by their hash", e);
+        }
+    }
+
+    private long rekeyStates() {
+        String collection = mongoTemplate.getCollectionName(SyncState.class);
+        long rekeyed = 0;
+        for (Document state : mongoTemplate.find(legacy(), Document.class, collection)) {
+            Object oldId = state.get("_id");
+            String tokenHash = SyncProfiler.tokenHash(String.valueOf(state.remove("token")));
+            state.put("_id", state.getString("provider") + ":" + tokenHash);
+            state.put("tokenHash", tokenHash);
+            try {
+                mongoTemplate.insert(state, collection);
+            } catch (DuplicateKeyException e) {
+                // A sync since the upgrade already wrote the hashed state; it is the newer one.
+            }
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(oldId)), collection);
+            rekeyed++;
+        }
+        return rekeyed;
+    }
+
+    private void dropTokenIndexes(Class<?> type) {
+        IndexOperations indexOps = mongoTemplate.indexOps(type);
+        for (IndexInfo index : indexOps.getIndexInfo()) {
+            if (index.getIndexFields().stream().anyMatch(field -> "token".equals(field.getKey()))) {
+                indexOps.dropIndex(index.getName());
+            }
+        }
+    }
+
+    private Query legacy() {
+        return new Query(Criteria.where("token").exists(true));
+    }
+}
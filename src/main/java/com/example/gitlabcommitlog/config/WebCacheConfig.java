@@ -0,0 +1,22 @@
+package com.example.gitlabcommitlog.config;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+
+@Configuration
+public class WebCacheConfig {
+    /**
+     * Content-hash ETags for the dashboard pages; API responses carry sync-version ETags instead.
+     */
+    @Bean
+    public FilterRegistrationBean<ShallowEtagHeaderFilter> staticPageEtagFilter() {
+        ShallowEtagHeaderFilter filter = new ShallowEtagHeaderFilter();
+        filter.setWriteWeakETag(true);
+        FilterRegistrationBean<ShallowEtagHeaderFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/", "/index.html", "/gitlab.html");
+        registration.setName("staticPageEtagFilter");
+        return registration;
+    }
+}
@@ -1,61 +1,198 @@
 package com.example.gitlabcommitlog.controller;
 
 import com.example.gitlabcommitlog.model.GitlabCommitDaily;
+import com.example.gitlabcommitlog.model.GitlabCommitRecord;
+import com.example.gitlabcommitlog.model.ProjectCatalog;
+import com.example.gitlabcommitlog.model.SyncRun;
+import com.example.gitlabcommitlog.model.SyncState;
+import com.example.gitlabcommitlog.service.ActivityAnalytics;
+import com.example.gitlabcommitlog.service.CommitDayCountStore;
+import com.example.gitlabcommitlog.service.CommitExportService;
+import com.example.gitlabcommitlog.service.CommitRollupStore;
 import com.example.gitlabcommitlog.service.GitlabDataSyncService;
+import com.example.gitlabcommitlog.service.SyncMetrics;
+import com.example.gitlabcommitlog.service.SyncProfiler;
+import com.example.gitlabcommitlog.service.SyncScheduler;
+import com.example.gitlabcommitlog.service.SyncVersionTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/gitlab")
 public class GitlabController {
     private static final Logger logger = LoggerFactory.getLogger(GitlabController.class);
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
     private final GitlabDataSyncService syncService;
+    private final SyncProfiler syncProfiler;
+    private final SyncVersionTracker syncVersions;
+    private final CommitExportService exportService;
+    private final SyncScheduler syncScheduler;
 
-    public GitlabController(GitlabDataSyncService syncService) {
+    public GitlabController(GitlabDataSyncService syncService, SyncProfiler syncProfiler,
+                            SyncVersionTracker syncVersions, CommitExportService exportService,
+                            SyncScheduler syncScheduler) {
         this.syncService = syncService;
+        this.syncProfiler = syncProfiler;
+        this.syncVersions = syncVersions;
+        this.exportService = exportService;
+        this.syncScheduler = syncScheduler;
     }
 
+    /**
+     * Sync the trailing year on a token's first fetch. Later fetches answer from the stored data at once and
+     * start a background refresh when it is older than {@code sync.freshness}.
+     */
     @GetMapping("/fetch")
-    public ResponseEntity<Map<String, Object>> fetch(
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> fetch(
             @RequestHeader(value = "X-Gitlab-Token", required = false) String tokenHeader,
             @RequestParam(value = "token", required = false) String tokenParam) {
         Map<String, Object> response = new HashMap<>();
         String token = resolveToken(tokenHeader, tokenParam);
         logger.info("Received GitLab sync request, token={}", maskToken(token));
-        if (syncService.hasTokenData(token)) {
+        SyncState state = syncService.getSyncState(token);
+        if (state != null && state.getLastSyncedAt() != null) {
+            boolean refreshing = syncService.refreshIfStale(token, state);
             response.put("status", "cached");
             response.put("days", 0);
-            logger.info("GitLab cache hit, token={}", maskToken(token));
-            return ResponseEntity.ok(response);
+            response.put("lastSyncedAt", state.getLastSyncedAt().toString());
+            response.put("refreshing", refreshing);
+            logger.info("GitLab cache hit, token={}, refreshing={}", maskToken(token), refreshing);
+            return CompletableFuture.completedFuture(ResponseEntity.ok(response));
         }
-        Map<LocalDate, Integer> data = syncService.syncLastYear(token);
-        response.put("days", data.size());
-        response.put("status", "synced");
-        logger.info("GitLab sync completed, token={}, new days={}", maskToken(token), data.size());
-        return ResponseEntity.ok(response);
+        return onSyncPool(() -> {
+            Map<LocalDate, Integer> data = syncService.syncLastYear(token);
+            response.put("days", data.size());
+            response.put("status", "synced");
+            logger.info("GitLab sync completed, token={}, new days={}", maskToken(token), data.size());
+            return ResponseEntity.ok(response);
+        });
     }
 
+    /**
+     * Heatmap of the trailing year. Without {@code tz} days are those of each commit's own offset, as stored at
+     * sync time; with an IANA zone id they are the calendar days of that zone. {@code project}, {@code branch}
+     * and {@code author} restrict it to exact names as listed by the project and branch endpoints and the
+     * commit rows.
+     */
     @GetMapping("/heatmap")
     public ResponseEntity<List<GitlabCommitDaily>> heatmap(
             @RequestHeader(value = "X-Gitlab-Token", required = false) String tokenHeader,
-            @RequestParam(value = "token", required = false) String tokenParam) {
-        LocalDate end = LocalDate.now(ZoneId.systemDefault());
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam(value = "tz", required = false) String tz,
+            @RequestParam(value = "project", required = false) String project,
+            @RequestParam(value = "branch", required = false) String branch,
+            @RequestParam(value = "author", required = false) String author,
+            WebRequest webRequest) {
+        ZoneId zone = resolveZone(tz);
+        if (zone == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        LocalDate end = LocalDate.now(zone);
         LocalDate start = end.minusYears(1).plusDays(1);
         String token = resolveToken(tokenHeader, tokenParam);
-        logger.info("Fetching GitLab heatmap data, token={}, range={} ~ {}", maskToken(token), start, end);
-        return ResponseEntity.ok(syncService.getDailyCounts(start, end, token));
+        logger.info("Fetching GitLab heatmap data, token={}, range={} ~ {}, tz={}, project={}, branch={}, author={}",
+                maskToken(token), start, end, tz, project, branch, author);
+        boolean filtered = hasText(project) || hasText(branch) || hasText(author);
+        if (!hasText(tz) && !filtered) {
+            String etag = syncVersions.etag(SyncMetrics.GITLAB, token, "heatmap", start, end);
+            return conditional(webRequest, etag, () -> syncService.getDailyCounts(start, end, token));
+        }
+        if (!hasText(tz)) {
+            String etag = syncVersions.etag(SyncMetrics.GITLAB, token, "heatmap", start, end, project, branch, author);
+            return conditional(webRequest, etag,
+                    () -> syncService.getFilteredDailyCounts(start, end, project, branch, author, token));
+        }
+        String etag = syncVersions.etag(SyncMetrics.GITLAB, token, "heatmap", start, end, zone.getId(), project, branch,
+                author);
+        return conditional(webRequest, etag,
+                () -> syncService.getDailyCountsInZone(start, end, zone, project, branch, author, token));
+    }
+
+    /**
+     * Heatmap of any range, by default the trailing year. {@code granularity} is day, week, month, year or
+     * auto, which picks the finest one that keeps the number of buckets small.
+     */
+    @GetMapping("/heatmap/range")
+    public ResponseEntity<Map<String, Object>> heatmapRange(
+            @RequestHeader(value = "X-Gitlab-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "auto") String granularity,
+            WebRequest webRequest) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneId.systemDefault());
+        LocalDate start = from != null ? from : end.minusYears(1).plusDays(1);
+        CommitRollupStore.Granularity resolved;
+        try {
+            resolved = CommitRollupStore.Granularity.parse(granularity);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Fetching GitLab heatmap range, token={}, range={} ~ {}, granularity={}",
+                maskToken(token), start, end, granularity);
+        String etag = syncVersions.etag(SyncMetrics.GITLAB, token, "heatmap-range", start, end, granularity);
+        return conditional(webRequest, etag, () -> syncService.getHeatmapRange(start, end, resolved, token));
+    }
+
+    /**
+     * The most active repositories, authors, branches, weekdays (1 = Monday) or hours of a range, by default
+     * the trailing year, most commits first.
+     */
+    @GetMapping("/activity/{dimension}")
+    public ResponseEntity<Map<String, Object>> activity(
+            @RequestHeader(value = "X-Gitlab-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @PathVariable String dimension,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "10") int limit,
+            WebRequest webRequest) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneId.systemDefault());
+        LocalDate start = from != null ? from : end.minusYears(1).plusDays(1);
+        CommitDayCountStore.Dimension resolved;
+        try {
+            resolved = CommitDayCountStore.Dimension.parse(dimension);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        int safeLimit = Math.min(Math.max(limit, 1), ActivityAnalytics.MAX_LIMIT);
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Fetching GitLab activity, token={}, dimension={}, range={} ~ {}, limit={}",
+                maskToken(token), dimension, start, end, safeLimit);
+        String etag = syncVersions.etag(SyncMetrics.GITLAB, token, "activity", resolved.key(), start, end, safeLimit);
+        return conditional(webRequest, etag, () -> syncService.getActivity(resolved, start, end, safeLimit, token));
     }
 
     @GetMapping("/commits")
@@ -65,30 +202,164 @@ public class GitlabController {
             @RequestParam(required = false) String project,
             @RequestParam(required = false) String branch,
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            WebRequest webRequest) {
         String token = resolveToken(tokenHeader, tokenParam);
         logger.info("Querying GitLab commits, token={}, project={}, branch={}, page={}, size={}",
                 maskToken(token), project, branch, page, size);
-        return ResponseEntity.ok(syncService.queryCommitRecords(project, branch, page, size, token));
+        String etag = syncVersions.etag(SyncMetrics.GITLAB, token, "commits", project, branch, page, size);
+        return conditional(webRequest, etag, () -> syncService.queryCommitRecords(project, branch, page, size, token));
+    }
+
+    /**
+     * One commit of the token with its full message; the listing and search only carry a preview.
+     */
+    @GetMapping("/commits/detail")
+    public ResponseEntity<Map<String, Object>> commitDetails(
+            @RequestHeader(value = "X-Gitlab-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam String repository,
+            @RequestParam String sha) {
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Fetching GitLab commit details, token={}, repository={}, sha={}", maskToken(token), repository,
+                sha);
+        Map<String, Object> details = syncService.getCommitDetails(repository, sha, token);
+        if (details == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(details);
+    }
+
+    /**
+     * Full-text search over commit messages: words, "quoted phrases" and -excluded words, combined with the
+     * project and branch filters of the commit listing.
+     */
+    @GetMapping("/commits/search")
+    public ResponseEntity<Map<String, Object>> searchCommits(
+            @RequestHeader(value = "X-Gitlab-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam String q,
+            @RequestParam(required = false) String project,
+            @RequestParam(required = false) String branch,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int size,
+            WebRequest webRequest) {
+        if (q.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Searching GitLab commits, token={}, project={}, branch={}, page={}, size={}",
+                maskToken(token), project, branch, page, size);
+        String etag = syncVersions.etag(SyncMetrics.GITLAB, token, "commit-search", q, project, branch, page, size);
+        return conditional(webRequest, etag,
+                () -> syncService.searchCommitRecords(q, project, branch, page, size, token));
+    }
+
+    @GetMapping("/commits/export")
+    public ResponseEntity<StreamingResponseBody> exportCommits(
+            @RequestHeader(value = "X-Gitlab-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam(required = false) String project,
+            @RequestParam(required = false) String branch,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        String token = resolveToken(tokenHeader, tokenParam);
+        boolean csv = "csv".equalsIgnoreCase(format);
+        logger.info("Exporting GitLab commit records, token={}, project={}, branch={}, format={}",
+                maskToken(token), project, branch, format);
+        StreamingResponseBody body = outputStream ->
+                exportService.export(GitlabCommitRecord.class, project, branch, format, token, outputStream);
+        return ResponseEntity.ok()
+                .contentType(csv ? MediaType.parseMediaType("text/csv;charset=UTF-8") : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(csv ? "commits.csv" : "commits.ndjson").build().toString())
+                .body(body);
     }
 
     @GetMapping("/projects")
     public ResponseEntity<List<String>> projects(
             @RequestHeader(value = "X-Gitlab-Token", required = false) String tokenHeader,
-            @RequestParam(value = "token", required = false) String tokenParam) {
+            @RequestParam(value = "token", required = false) String tokenParam,
+            WebRequest webRequest) {
         String token = resolveToken(tokenHeader, tokenParam);
         logger.info("Fetching GitLab project list, token={}", maskToken(token));
-        return ResponseEntity.ok(syncService.getAllProjects(token));
+        String etag = syncVersions.etag(SyncMetrics.GITLAB, token, "projects");
+        return conditional(webRequest, etag, () -> syncService.getAllProjects(token));
     }
 
     @GetMapping("/branches")
     public ResponseEntity<List<String>> branches(
             @RequestHeader(value = "X-Gitlab-Token", required = false) String tokenHeader,
             @RequestParam(value = "token", required = false) String tokenParam,
-            @RequestParam String project) {
+            @RequestParam String project,
+            WebRequest webRequest) {
         String token = resolveToken(tokenHeader, tokenParam);
         logger.info("Fetching GitLab branches, token={}, project={}", maskToken(token), project);
-        return ResponseEntity.ok(syncService.getBranchesByProject(project, token));
+        String etag = syncVersions.etag(SyncMetrics.GITLAB, token, "branches", project);
+        return conditional(webRequest, etag, () -> syncService.getBranchesByProject(project, token));
+    }
+
+    /**
+     * The token's repositories with their branches, branch heads, commit counts and last activity.
+     */
+    @GetMapping("/catalog")
+    public ResponseEntity<List<ProjectCatalog>> catalog(
+            @RequestHeader(value = "X-Gitlab-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            WebRequest webRequest) {
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Fetching GitLab project catalog, token={}", maskToken(token));
+        String etag = syncVersions.etag(SyncMetrics.GITLAB, token, "catalog");
+        return conditional(webRequest, etag, () -> syncService.getCatalog(token));
+    }
+
+    @GetMapping("/sync-runs")
+    public ResponseEntity<List<SyncRun>> syncRuns(
+            @RequestHeader(value = "X-Gitlab-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam(defaultValue = "20") int limit) {
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Fetching GitLab sync runs, token={}, limit={}", maskToken(token), limit);
+        return ResponseEntity.ok(syncProfiler.findRecent(SyncMetrics.GITLAB, token, limit));
+    }
+
+    /**
+     * Run a sync on the sync pool instead of the request thread, which stays free for reads; 503 when too
+     * many syncs are already waiting.
+     */
+    private CompletableFuture<ResponseEntity<Map<String, Object>>> onSyncPool(
+            Supplier<ResponseEntity<Map<String, Object>>> sync) {
+        try {
+            return syncScheduler.run(sync);
+        } catch (RejectedExecutionException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "busy");
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response));
+        }
+    }
+
+    private <T> ResponseEntity<T> conditional(WebRequest webRequest, String etag, Supplier<T> body) {
+        if (webRequest.checkNotModified(etag)) {
+            // checkNotModified already wrote the 304 status and the ETag header.
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(REVALIDATE)
+                    .varyBy("X-Gitlab-Token").build();
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(REVALIDATE).varyBy("X-Gitlab-Token").body(body.get());
+    }
+
+    private ZoneId resolveZone(String tz) {
+        if (tz == null || tz.isBlank()) {
+            return ZoneId.systemDefault();
+        }
+        try {
+            return ZoneId.of(tz.trim());
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private boolean hasText(String value) {
+        return value != null && !value.isBlank();
     }
 
     private String resolveToken(String tokenHeader, String tokenParam) {
@@ -1,34 +1,79 @@
 package com.example.gitlabcommitlog.controller;
 
+import com.example.gitlabcommitlog.config.SyncProperties;
 import com.example.gitlabcommitlog.model.CommitDaily;
+import com.example.gitlabcommitlog.model.CommitRecord;
+import com.example.gitlabcommitlog.model.ProjectCatalog;
+import com.example.gitlabcommitlog.model.SyncRun;
+import com.example.gitlabcommitlog.model.SyncState;
+import com.example.gitlabcommitlog.service.ActivityAnalytics;
+import com.example.gitlabcommitlog.service.CommitDayCountStore;
+import com.example.gitlabcommitlog.service.CommitExportService;
+import com.example.gitlabcommitlog.service.CommitRollupStore;
 import com.example.gitlabcommitlog.service.GithubSyncService;
+import com.example.gitlabcommitlog.service.SyncMetrics;
+import com.example.gitlabcommitlog.service.SyncOutcome;
+import com.example.gitlabcommitlog.service.SyncProfiler;
+import com.example.gitlabcommitlog.service.SyncScheduler;
+import com.example.gitlabcommitlog.service.SyncVersionTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.DateTimeException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api")
 public class HeatmapController {
     private static final Logger logger = LoggerFactory.getLogger(HeatmapController.class);
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
     private final GithubSyncService syncService;
+    private final SyncProfiler syncProfiler;
+    private final SyncVersionTracker syncVersions;
+    private final CommitExportService exportService;
+    private final SyncScheduler syncScheduler;
+    private final SyncProperties syncProperties;
 
-    public HeatmapController(GithubSyncService syncService) {
+    public HeatmapController(GithubSyncService syncService, SyncProfiler syncProfiler,
+                             SyncVersionTracker syncVersions, CommitExportService exportService,
+                             SyncScheduler syncScheduler, SyncProperties syncProperties) {
         this.syncService = syncService;
+        this.syncProfiler = syncProfiler;
+        this.syncVersions = syncVersions;
+        this.exportService = exportService;
+        this.syncScheduler = syncScheduler;
+        this.syncProperties = syncProperties;
     }
 
+    /**
+     * Sync the trailing year on a token's first fetch. Later fetches answer from the stored data at once and
+     * start a background refresh when it is older than {@code sync.freshness}.
+     */
     @GetMapping("/fetch")
-    public ResponseEntity<Map<String, Object>> fetch(
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> fetch(
             @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
             @RequestParam(value = "token", required = false) String tokenParam) {
         Map<String, Object> response = new HashMap<>();
@@ -38,29 +83,46 @@ public class HeatmapController {
 
         logger.info("Fetch request, token={}", maskToken(token));
 
-        if (syncService.hasTokenData(token)) {
+        SyncState state = syncService.getSyncState(token);
+        if (state != null && state.getLastSyncedAt() != null) {
+            boolean refreshing = syncService.refreshIfStale(token, state);
             List<CommitDaily> dailyCounts = syncService.getDailyCounts(start, end, token);
             response.put("status", "cached");
             response.put("days", dailyCounts.size());
             response.put("data", dailyCounts);
-            logger.info("Cache hit, token={}, returning commit_daily size={}", maskToken(token), dailyCounts.size());
-            return ResponseEntity.ok(response);
+            response.put("lastSyncedAt", state.getLastSyncedAt().toString());
+            response.put("refreshing", refreshing);
+            logger.info("Cache hit, token={}, returning commit_daily size={}, refreshing={}", maskToken(token),
+                    dailyCounts.size(), refreshing);
+            return CompletableFuture.completedFuture(ResponseEntity.ok(response));
         }
 
-        syncService.syncLastYear(token);
-        List<CommitDaily> dailyCounts = syncService.getDailyCounts(start, end, token);
-        response.put("days", dailyCounts.size());
-        response.put("status", "synced");
-        response.put("data", dailyCounts);
-        logger.info("Sync completed, token={}, new days={}", maskToken(token), dailyCounts.size());
-        return ResponseEntity.ok(response);
+        return onSyncPool(() -> {
+            syncService.syncLastYear(token);
+            List<CommitDaily> dailyCounts = syncService.getDailyCounts(start, end, token);
+            response.put("days", dailyCounts.size());
+            response.put("status", "synced");
+            response.put("data", dailyCounts);
+            logger.info("Sync completed, token={}, new days={}", maskToken(token), dailyCounts.size());
+            return ResponseEntity.ok(response);
+        });
     }
 
+    /**
+     * Sync a recent range within {@code budget} seconds, by default {@code sync.interactive-budget}. Repositories
+     * not reached in time are listed as {@code pendingProjects} and synced in the background.
+     */
     @GetMapping("/sync")
-    public ResponseEntity<Map<String, Object>> syncLatest(
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> syncLatest(
             @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
             @RequestParam(value = "token", required = false) String tokenParam,
-            @RequestParam(value = "range", defaultValue = "week") String range) {
+            @RequestParam(value = "range", defaultValue = "week") String range,
+            @RequestParam(value = "budget", required = false) Integer budgetSeconds) {
+        if (budgetSeconds != null && budgetSeconds <= 0) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        Duration budget = budgetSeconds != null ? Duration.ofSeconds(budgetSeconds)
+                : syncProperties.getInteractiveBudget();
         Map<String, Object> response = new HashMap<>();
         String token = resolveToken(tokenHeader, tokenParam);
         LocalDate end = LocalDate.now(ZoneId.systemDefault());
@@ -68,24 +130,120 @@ public class HeatmapController {
 
         logger.info("Sync Latest: token={}, range={} (only this range is synced from GitHub)", maskToken(token), range);
 
-        syncService.syncRecent(token, range);
-        List<CommitDaily> dailyCounts = syncService.getDailyCounts(start, end, token);
-        response.put("days", dailyCounts.size());
-        response.put("status", "synced");
-        response.put("data", dailyCounts);
-        logger.info("Sync Latest done: token={}, range={}, heatmapDays={}", maskToken(token), range, dailyCounts.size());
-        return ResponseEntity.ok(response);
+        return onSyncPool(() -> {
+            SyncOutcome outcome = syncService.syncRecent(token, range, budget);
+            List<CommitDaily> dailyCounts = syncService.getDailyCounts(start, end, token);
+            response.put("days", dailyCounts.size());
+            response.put("status", outcome.isComplete() ? "synced" : "partial");
+            response.put("complete", outcome.isComplete());
+            response.put("pendingProjects", outcome.getPendingProjects());
+            response.put("data", dailyCounts);
+            logger.info("Sync Latest done: token={}, range={}, heatmapDays={}, complete={}", maskToken(token), range,
+                    dailyCounts.size(), outcome.isComplete());
+            return ResponseEntity.ok(response);
+        });
     }
 
+    /**
+     * Heatmap of the trailing year. Without {@code tz} days are those of each commit's own offset, as stored at
+     * sync time; with an IANA zone id they are the calendar days of that zone. {@code project}, {@code branch}
+     * and {@code author} restrict it to exact names as listed by the project and branch endpoints and the
+     * commit rows.
+     */
     @GetMapping("/heatmap")
     public ResponseEntity<List<CommitDaily>> heatmap(
             @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
-            @RequestParam(value = "token", required = false) String tokenParam) {
-        LocalDate end = LocalDate.now(ZoneId.systemDefault());
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam(value = "tz", required = false) String tz,
+            @RequestParam(value = "project", required = false) String project,
+            @RequestParam(value = "branch", required = false) String branch,
+            @RequestParam(value = "author", required = false) String author,
+            WebRequest webRequest) {
+        ZoneId zone = resolveZone(tz);
+        if (zone == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        LocalDate end = LocalDate.now(zone);
         LocalDate start = end.minusYears(1).plusDays(1);
         String token = resolveToken(tokenHeader, tokenParam);
-        logger.info("Fetching heatmap data, token={}, range={} ~ {}", maskToken(token), start, end);
-        return ResponseEntity.ok(syncService.getDailyCounts(start, end, token));
+        logger.info("Fetching heatmap data, token={}, range={} ~ {}, tz={}, project={}, branch={}, author={}",
+                maskToken(token), start, end, tz, project, branch, author);
+        boolean filtered = hasText(project) || hasText(branch) || hasText(author);
+        if (!hasText(tz) && !filtered) {
+            String etag = syncVersions.etag(SyncMetrics.GITHUB, token, "heatmap", start, end);
+            return conditional(webRequest, etag, () -> syncService.getDailyCounts(start, end, token));
+        }
+        if (!hasText(tz)) {
+            String etag = syncVersions.etag(SyncMetrics.GITHUB, token, "heatmap", start, end, project, branch, author);
+            return conditional(webRequest, etag,
+                    () -> syncService.getFilteredDailyCounts(start, end, project, branch, author, token));
+        }
+        String etag = syncVersions.etag(SyncMetrics.GITHUB, token, "heatmap", start, end, zone.getId(), project, branch,
+                author);
+        return conditional(webRequest, etag,
+                () -> syncService.getDailyCountsInZone(start, end, zone, project, branch, author, token));
+    }
+
+    /**
+     * Heatmap of any range, by default the trailing year. {@code granularity} is day, week, month, year or
+     * auto, which picks the finest one that keeps the number of buckets small.
+     */
+    @GetMapping("/heatmap/range")
+    public ResponseEntity<Map<String, Object>> heatmapRange(
+            @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "auto") String granularity,
+            WebRequest webRequest) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneId.systemDefault());
+        LocalDate start = from != null ? from : end.minusYears(1).plusDays(1);
+        CommitRollupStore.Granularity resolved;
+        try {
+            resolved = CommitRollupStore.Granularity.parse(granularity);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Fetching heatmap range, token={}, range={} ~ {}, granularity={}",
+                maskToken(token), start, end, granularity);
+        String etag = syncVersions.etag(SyncMetrics.GITHUB, token, "heatmap-range", start, end, granularity);
+        return conditional(webRequest, etag, () -> syncService.getHeatmapRange(start, end, resolved, token));
+    }
+
+    /**
+     * The most active repositories, authors, branches, weekdays (1 = Monday) or hours of a range, by default
+     * the trailing year, most commits first.
+     */
+    @GetMapping("/activity/{dimension}")
+    public ResponseEntity<Map<String, Object>> activity(
+            @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @PathVariable String dimension,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "10") int limit,
+            WebRequest webRequest) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneId.systemDefault());
+        LocalDate start = from != null ? from : end.minusYears(1).plusDays(1);
+        CommitDayCountStore.Dimension resolved;
+        try {
+            resolved = CommitDayCountStore.Dimension.parse(dimension);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        int safeLimit = Math.min(Math.max(limit, 1), ActivityAnalytics.MAX_LIMIT);
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Fetching activity, token={}, dimension={}, range={} ~ {}, limit={}",
+                maskToken(token), dimension, start, end, safeLimit);
+        String etag = syncVersions.etag(SyncMetrics.GITHUB, token, "activity", resolved.key(), start, end, safeLimit);
+        return conditional(webRequest, etag, () -> syncService.getActivity(resolved, start, end, safeLimit, token));
     }
 
     @GetMapping("/commits")
@@ -95,30 +253,163 @@ public class HeatmapController {
             @RequestParam(required = false) String project,
             @RequestParam(required = false) String branch,
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            WebRequest webRequest) {
         String token = resolveToken(tokenHeader, tokenParam);
         logger.info("Querying commit records, token={}, project={}, branch={}, page={}, size={}",
                 maskToken(token), project, branch, page, size);
-        return ResponseEntity.ok(syncService.queryCommitRecords(project, branch, page, size, token));
+        String etag = syncVersions.etag(SyncMetrics.GITHUB, token, "commits", project, branch, page, size);
+        return conditional(webRequest, etag, () -> syncService.queryCommitRecords(project, branch, page, size, token));
+    }
+
+    /**
+     * One commit of the token with its full message; the listing and search only carry a preview.
+     */
+    @GetMapping("/commits/detail")
+    public ResponseEntity<Map<String, Object>> commitDetails(
+            @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam String repository,
+            @RequestParam String sha) {
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Fetching commit details, token={}, repository={}, sha={}", maskToken(token), repository, sha);
+        Map<String, Object> details = syncService.getCommitDetails(repository, sha, token);
+        if (details == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(details);
+    }
+
+    /**
+     * Full-text search over commit messages: words, "quoted phrases" and -excluded words, combined with the
+     * project and branch filters of the commit listing.
+     */
+    @GetMapping("/commits/search")
+    public ResponseEntity<Map<String, Object>> searchCommits(
+            @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam String q,
+            @RequestParam(required = false) String project,
+            @RequestParam(required = false) String branch,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int size,
+            WebRequest webRequest) {
+        if (q.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Searching commits, token={}, project={}, branch={}, page={}, size={}",
+                maskToken(token), project, branch, page, size);
+        String etag = syncVersions.etag(SyncMetrics.GITHUB, token, "commit-search", q, project, branch, page, size);
+        return conditional(webRequest, etag,
+                () -> syncService.searchCommitRecords(q, project, branch, page, size, token));
+    }
+
+    @GetMapping("/commits/export")
+    public ResponseEntity<StreamingResponseBody> exportCommits(
+            @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam(required = false) String project,
+            @RequestParam(required = false) String branch,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        String token = resolveToken(tokenHeader, tokenParam);
+        boolean csv = "csv".equalsIgnoreCase(format);
+        logger.info("Exporting commit records, token={}, project={}, branch={}, format={}",
+                maskToken(token), project, branch, format);
+        StreamingResponseBody body = outputStream ->
+                exportService.export(CommitRecord.class, project, branch, format, token, outputStream);
+        return ResponseEntity.ok()
+                .contentType(csv ? MediaType.parseMediaType("text/csv;charset=UTF-8") : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(csv ? "commits.csv" : "commits.ndjson").build().toString())
+                .body(body);
     }
 
     @GetMapping("/projects")
     public ResponseEntity<List<String>> projects(
             @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
-            @RequestParam(value = "token", required = false) String tokenParam) {
+            @RequestParam(value = "token", required = false) String tokenParam,
+            WebRequest webRequest) {
         String token = resolveToken(tokenHeader, tokenParam);
         logger.info("Fetching project list, token={}", maskToken(token));
-        return ResponseEntity.ok(syncService.getAllProjects(token));
+        String etag = syncVersions.etag(SyncMetrics.GITHUB, token, "projects");
+        return conditional(webRequest, etag, () -> syncService.getAllProjects(token));
     }
 
     @GetMapping("/branches")
     public ResponseEntity<List<String>> branches(
             @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
             @RequestParam(value = "token", required = false) String tokenParam,
-            @RequestParam String project) {
+            @RequestParam String project,
+            WebRequest webRequest) {
         String token = resolveToken(tokenHeader, tokenParam);
         logger.info("Fetching branch list, token={}, project={}", maskToken(token), project);
-        return ResponseEntity.ok(syncService.getBranchesByProject(project, token));
+        String etag = syncVersions.etag(SyncMetrics.GITHUB, token, "branches", project);
+        return conditional(webRequest, etag, () -> syncService.getBranchesByProject(project, token));
+    }
+
+    /**
+     * The token's repositories with their branches, branch heads, commit counts and last activity.
+     */
+    @GetMapping("/catalog")
+    public ResponseEntity<List<ProjectCatalog>> catalog(
+            @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            WebRequest webRequest) {
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Fetching project catalog, token={}", maskToken(token));
+        String etag = syncVersions.etag(SyncMetrics.GITHUB, token, "catalog");
+        return conditional(webRequest, etag, () -> syncService.getCatalog(token));
+    }
+
+    @GetMapping("/sync-runs")
+    public ResponseEntity<List<SyncRun>> syncRuns(
+            @RequestHeader(value = "X-Github-Token", required = false) String tokenHeader,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam(defaultValue = "20") int limit) {
+        String token = resolveToken(tokenHeader, tokenParam);
+        logger.info("Fetching sync runs, token={}, limit={}", maskToken(token), limit);
+        return ResponseEntity.ok(syncProfiler.findRecent(SyncMetrics.GITHUB, token, limit));
+    }
+
+    /**
+     * Run a sync on the sync pool instead of the request thread, which stays free for reads; 503 when too
+     * many syncs are already waiting.
+     */
+    private CompletableFuture<ResponseEntity<Map<String, Object>>> onSyncPool(
+            Supplier<ResponseEntity<Map<String, Object>>> sync) {
+        try {
+            return syncScheduler.run(sync);
+        } catch (RejectedExecutionException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "busy");
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response));
+        }
+    }
+
+    private <T> ResponseEntity<T> conditional(WebRequest webRequest, String etag, Supplier<T> body) {
+        if (webRequest.checkNotModified(etag)) {
+            // checkNotModified already wrote the 304 status and the ETag header.
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(REVALIDATE)
+                    .varyBy("X-Github-Token").build();
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(REVALIDATE).varyBy("X-Github-Token").body(body.get());
+    }
+
+    private ZoneId resolveZone(String tz) {
+        if (tz == null || tz.isBlank()) {
+            return ZoneId.systemDefault();
+        }
+        try {
+            return ZoneId.of(tz.trim());
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private boolean hasText(String value) {
+        return value != null && !value.isBlank();
     }
 
     private String resolveToken(String tokenHeader, String tokenParam) {
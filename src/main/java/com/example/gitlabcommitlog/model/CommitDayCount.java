@@ -0,0 +1,97 @@
+package com.example.gitlabcommitlog.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Number of a token's commits on one day ({@code yyyyMMdd}, committer-local) in one repository, attributed to
+ * one branch and author, so filtered heatmaps are summed from these instead of the commit rows.
+ */
+@Document(collection = "commit_day_counts")
+@CompoundIndexes({
+        @CompoundIndex(name = "provider_token_hash_day", def = "{'provider': 1, 'tokenHash': 1, 'day': 1}"),
+        @CompoundIndex(name = "provider_token_hash_repository_day",
+                def = "{'provider': 1, 'tokenHash': 1, 'repository': 1, 'day': 1}"),
+        @CompoundIndex(name = "provider_token_hash_author_day",
+                def = "{'provider': 1, 'tokenHash': 1, 'author': 1, 'day': 1}")
+})
+public class CommitDayCount {
+    @Id
+    private String id;
+    private String provider;
+    private String tokenHash;
+    private String repository;
+    private String branch;
+    private String author;
+    private int day;
+    private int count;
+
+    public CommitDayCount() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public void setRepository(String repository) {
+        this.repository = repository;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    public void setBranch(String branch) {
+        this.branch = branch;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public int getDay() {
+        return day;
+    }
+
+    public void setDay(int day) {
+        this.day = day;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+}
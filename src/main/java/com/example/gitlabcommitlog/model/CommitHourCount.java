@@ -0,0 +1,81 @@
+package com.example.gitlabcommitlog.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Number of a token's commits in one committer-local hour of one day ({@code yyyyMMdd}); {@code weekday} is
+ * 1 for Monday through 7 for Sunday.
+ */
+@Document(collection = "commit_hour_counts")
+@CompoundIndex(name = "provider_token_hash_day", def = "{'provider': 1, 'tokenHash': 1, 'day': 1}")
+public class CommitHourCount {
+    @Id
+    private String id;
+    private String provider;
+    private String tokenHash;
+    private int day;
+    private int weekday;
+    private int hour;
+    private int count;
+
+    public CommitHourCount() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public int getDay() {
+        return day;
+    }
+
+    public void setDay(int day) {
+        this.day = day;
+    }
+
+    public int getWeekday() {
+        return weekday;
+    }
+
+    public void setWeekday(int weekday) {
+        this.weekday = weekday;
+    }
+
+    public int getHour() {
+        return hour;
+    }
+
+    public void setHour(int hour) {
+        this.hour = hour;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+}
@@ -1,9 +1,18 @@
 package com.example.gitlabcommitlog.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
+
 @Document(collection = "commit_records")
+@CompoundIndexes({
+        @CompoundIndex(name = "token_committed_time", def = "{'token': 1, 'committedTime': -1}"),
+        @CompoundIndex(name = "commit_key_token", def = "{'commitKey': 1, 'token': 1}"),
+        @CompoundIndex(name = "token_message_text", def = "{'token': 1, 'message': 'text'}")
+})
 public class CommitRecord {
     @Id
     private String id;
@@ -12,9 +21,12 @@ public class CommitRecord {
     private String repository;
     private String branch;
     private String committedAt;
+    private Instant committedTime;
+    private int committedDay;
     private String author;
     private String message;
     private String url;
+    private String commitKey;
 
     public CommitRecord() {
     }
@@ -80,6 +92,22 @@ public class CommitRecord {
         this.committedAt = committedAt;
     }
 
+    public Instant getCommittedTime() {
+        return committedTime;
+    }
+
+    public void setCommittedTime(Instant committedTime) {
+        this.committedTime = committedTime;
+    }
+
+    public int getCommittedDay() {
+        return committedDay;
+    }
+
+    public void setCommittedDay(int committedDay) {
+        this.committedDay = committedDay;
+    }
+
     public String getAuthor() {
         return author;
     }
@@ -103,4 +131,12 @@ public class CommitRecord {
     public void setUrl(String url) {
         this.url = url;
     }
+
+    public String getCommitKey() {
+        return commitKey;
+    }
+
+    public void setCommitKey(String commitKey) {
+        this.commitKey = commitKey;
+    }
 }
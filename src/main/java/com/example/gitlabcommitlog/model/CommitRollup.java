@@ -0,0 +1,84 @@
+package com.example.gitlabcommitlog.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Commit count of a token over one week (starting Monday), month or year, summed from the provider's daily
+ * counts. {@code period} is the first day of the period; periods without commits have no document.
+ */
+@Document(collection = "commit_rollups")
+@CompoundIndex(name = "provider_token_hash_granularity_period",
+        def = "{'provider': 1, 'tokenHash': 1, 'granularity': 1, 'period': 1}")
+public class CommitRollup {
+    @Id
+    private String id;
+    private String provider;
+    private String tokenHash;
+    private String granularity;
+    private String period;
+    private int count;
+    private Instant updatedAt;
+
+    public CommitRollup() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public String getGranularity() {
+        return granularity;
+    }
+
+    public void setGranularity(String granularity) {
+        this.granularity = granularity;
+    }
+
+    public String getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(String period) {
+        this.period = period;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.gitlabcommitlog.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A repository a token has synced, with its branches as of the last sync. Commit counts and last activity
+ * (yyyy-MM-dd, committer-local) cover every commit of the token stored for the repository; a branch whose
+ * {@code head} is {@code null} no longer exists but still has commits attributed to it.
+ */
+@Document(collection = "project_catalog")
+@CompoundIndex(name = "provider_token_hash_repository",
+        def = "{'provider': 1, 'tokenHash': 1, 'repository': 1}")
+public class ProjectCatalog {
+    @Id
+    private String id;
+    private String provider;
+    private String tokenHash;
+    private String repository;
+    private List<Branch> branches = new ArrayList<>();
+    private long commitCount;
+    private String lastActivity;
+    private Instant headsUpdatedAt;
+    private Instant updatedAt;
+
+    public ProjectCatalog() {
+    }
+
+    public ProjectCatalog(String id, String provider, String tokenHash, String repository) {
+        this.id = id;
+        this.provider = provider;
+        this.tokenHash = tokenHash;
+        this.repository = repository;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public void setRepository(String repository) {
+        this.repository = repository;
+    }
+
+    public List<Branch> getBranches() {
+        return branches;
+    }
+
+    public void setBranches(List<Branch> branches) {
+        this.branches = branches;
+    }
+
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    public void setCommitCount(long commitCount) {
+        this.commitCount = commitCount;
+    }
+
+    public String getLastActivity() {
+        return lastActivity;
+    }
+
+    public void setLastActivity(String lastActivity) {
+        this.lastActivity = lastActivity;
+    }
+
+    public Instant getHeadsUpdatedAt() {
+        return headsUpdatedAt;
+    }
+
+    public void setHeadsUpdatedAt(Instant headsUpdatedAt) {
+        this.headsUpdatedAt = headsUpdatedAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public static class Branch {
+        private String name;
+        private String head;
+        private long commitCount;
+        private String lastActivity;
+
+        public Branch() {
+        }
+
+        public Branch(String name, String head) {
+            this.name = name;
+            this.head = head;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getHead() {
+            return head;
+        }
+
+        public void setHead(String head) {
+            this.head = head;
+        }
+
+        public long getCommitCount() {
+            return commitCount;
+        }
+
+        public void setCommitCount(long commitCount) {
+            this.commitCount = commitCount;
+        }
+
+        public String getLastActivity() {
+            return lastActivity;
+        }
+
+        public void setLastActivity(String lastActivity) {
+            this.lastActivity = lastActivity;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.gitlabcommitlog.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Position of a project inside an unfinished sync, embedded in {@link SyncCheckpoint}. {@code claim} is the
+ * work item claim of the instance processing the project; progress is only recorded under that claim.
+ */
+public class ProjectCheckpoint {
+    private List<String> completedBranches = new ArrayList<>();
+    private String currentBranch;
+    private int nextPage = 1;
+    private String claim;
+
+    public ProjectCheckpoint() {
+    }
+
+    public ProjectCheckpoint(ProjectCheckpoint other) {
+        this.completedBranches = new ArrayList<>(other.completedBranches);
+        this.currentBranch = other.currentBranch;
+        this.nextPage = other.nextPage;
+        this.claim = other.claim;
+    }
+
+    public List<String> getCompletedBranches() {
+        return completedBranches;
+    }
+
+    public void setCompletedBranches(List<String> completedBranches) {
+        this.completedBranches = completedBranches;
+    }
+
+    public String getCurrentBranch() {
+        return currentBranch;
+    }
+
+    public void setCurrentBranch(String currentBranch) {
+        this.currentBranch = currentBranch;
+    }
+
+    public int getNextPage() {
+        return nextPage;
+    }
+
+    public void setNextPage(int nextPage) {
+        this.nextPage = nextPage;
+    }
+
+    public String getClaim() {
+        return claim;
+    }
+
+    public void setClaim(String claim) {
+        this.claim = claim;
+    }
+}
@@ -3,6 +3,8 @@ package com.example.gitlabcommitlog.model;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
+
 @Document(collection = "projects")
 public class ProjectInfo {
     @Id
@@ -11,6 +13,7 @@ public class ProjectInfo {
     private String name;
     private String visibility;
     private String language;
+    private Instant metadataFetchedAt;
 
     public ProjectInfo() {
     }
@@ -62,4 +65,12 @@ public class ProjectInfo {
     public void setLanguage(String language) {
         this.language = language;
     }
+
+    public Instant getMetadataFetchedAt() {
+        return metadataFetchedAt;
+    }
+
+    public void setMetadataFetchedAt(Instant metadataFetchedAt) {
+        this.metadataFetchedAt = metadataFetchedAt;
+    }
 }
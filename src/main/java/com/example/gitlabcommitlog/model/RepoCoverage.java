@@ -0,0 +1,103 @@
+package com.example.gitlabcommitlog.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Date range of a repository already ingested into {@code shared_commits}, valid for as long as the
+ * branch heads still hash to {@code fingerprint}. {@code scope} is {@code all} or {@code author:<id>} for
+ * ranges fetched with an author filter.
+ */
+@Document(collection = "repo_coverage")
+public class RepoCoverage {
+    @Id
+    private String id;
+    private String provider;
+    private String repository;
+    private String scope;
+    private String fingerprint;
+    private String since;
+    private String until;
+    private Instant updatedAt;
+
+    public RepoCoverage() {
+    }
+
+    public RepoCoverage(String id, String provider, String repository, String scope, String fingerprint,
+                        String since, String until, Instant updatedAt) {
+        this.id = id;
+        this.provider = provider;
+        this.repository = repository;
+        this.scope = scope;
+        this.fingerprint = fingerprint;
+        this.since = since;
+        this.until = until;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public void setRepository(String repository) {
+        this.repository = repository;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public void setScope(String scope) {
+        this.scope = scope;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public String getSince() {
+        return since;
+    }
+
+    public void setSince(String since) {
+        this.since = since;
+    }
+
+    public String getUntil() {
+        return until;
+    }
+
+    public void setUntil(String until) {
+        this.until = until;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.gitlabcommitlog.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Content-addressed commit shared by every token that can see the repository. The id is
+ * {@code provider:repository:sha}; per-token {@link CommitRecord}/{@link GitlabCommitRecord} rows carry the
+ * fields needed for filtering, the message included for per-token search, and point here through their
+ * {@code commitKey}.
+ */
+@Document(collection = "shared_commits")
+@CompoundIndexes({
+        @CompoundIndex(name = "provider_repository_day", def = "{'provider': 1, 'repository': 1, 'committedDay': 1}")
+})
+public class SharedCommit {
+    @Id
+    private String id;
+    private String provider;
+    private String repository;
+    private String sha;
+    /**
+     * Branches the commit was listed under by any token's sync. Which one a token's row counts it towards is
+     * decided per token, from the branches that token can see.
+     */
+    private List<String> branches = new ArrayList<>();
+    private String committedAt;
+    /**
+     * {@code committedAt} as a native date, for range queries and time zone aware bucketing.
+     */
+    private Instant committedTime;
+    /**
+     * Calendar day of {@code committedAt} in the committer's own offset as {@code yyyyMMdd}; the day a commit
+     * counts towards in the daily totals.
+     */
+    private int committedDay;
+    private String author;
+    /**
+     * Account-level author identity used for author-scoped syncs: GitHub login or GitLab author email.
+     */
+    private String authorId;
+    private String message;
+    private String url;
+
+    public SharedCommit() {
+    }
+
+    public SharedCommit(String id, String provider, String repository, String sha, List<String> branches,
+                        String committedAt, String author, String authorId, String message, String url) {
+        this.id = id;
+        this.provider = provider;
+        this.repository = repository;
+        this.sha = sha;
+        this.branches = branches;
+        this.committedAt = committedAt;
+        this.author = author;
+        this.authorId = authorId;
+        this.message = message;
+        this.url = url;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public void setRepository(String repository) {
+        this.repository = repository;
+    }
+
+    public String getSha() {
+        return sha;
+    }
+
+    public void setSha(String sha) {
+        this.sha = sha;
+    }
+
+    public List<String> getBranches() {
+        return branches;
+    }
+
+    public void setBranches(List<String> branches) {
+        this.branches = branches;
+    }
+
+    public String getCommittedAt() {
+        return committedAt;
+    }
+
+    public void setCommittedAt(String committedAt) {
+        this.committedAt = committedAt;
+    }
+
+    public Instant getCommittedTime() {
+        return committedTime;
+    }
+
+    public void setCommittedTime(Instant committedTime) {
+        this.committedTime = committedTime;
+    }
+
+    public int getCommittedDay() {
+        return committedDay;
+    }
+
+    public void setCommittedDay(int committedDay) {
+        this.committedDay = committedDay;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public String getAuthorId() {
+        return authorId;
+    }
+
+    public void setAuthorId(String authorId) {
+        this.authorId = authorId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.gitlabcommitlog.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Progress of a sync that has not finished yet, keyed by provider, token hash, scope and date range. Daily
+ * counts are accumulated here together with the page positions of the projects in progress, so a resumed
+ * sync neither loses nor double counts commits. Abandoned checkpoints expire a week after their last update.
+ */
+@Document(collection = "sync_checkpoints")
+public class SyncCheckpoint {
+    @Id
+    private String id;
+    private String provider;
+    private String tokenHash;
+    private String scope;
+    private String rangeStart;
+    private String rangeEnd;
+    private Instant startedAt;
+    @Indexed(name = "updated_ttl", expireAfter = "7d")
+    private Instant updatedAt;
+    private List<String> completedProjects = new ArrayList<>();
+    private Map<String, Integer> dailyCounts = new HashMap<>();
+    private Map<String, ProjectCheckpoint> projectsInProgress = new ConcurrentHashMap<>();
+    @Transient
+    private Set<String> unflushedDates = new HashSet<>();
+    @Transient
+    private Map<String, ProjectCheckpoint> resumedProgress = new ConcurrentHashMap<>();
+
+    public SyncCheckpoint() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public void setScope(String scope) {
+        this.scope = scope;
+    }
+
+    public String getRangeStart() {
+        return rangeStart;
+    }
+
+    public void setRangeStart(String rangeStart) {
+        this.rangeStart = rangeStart;
+    }
+
+    public String getRangeEnd() {
+        return rangeEnd;
+    }
+
+    public void setRangeEnd(String rangeEnd) {
+        this.rangeEnd = rangeEnd;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public List<String> getCompletedProjects() {
+        return completedProjects;
+    }
+
+    public void setCompletedProjects(List<String> completedProjects) {
+        this.completedProjects = completedProjects;
+    }
+
+    public Map<String, Integer> getDailyCounts() {
+        return dailyCounts;
+    }
+
+    public void setDailyCounts(Map<String, Integer> dailyCounts) {
+        this.dailyCounts = dailyCounts;
+    }
+
+    public Map<String, ProjectCheckpoint> getProjectsInProgress() {
+        return projectsInProgress;
+    }
+
+    public void setProjectsInProgress(Map<String, ProjectCheckpoint> projectsInProgress) {
+        this.projectsInProgress = projectsInProgress;
+    }
+
+    public Set<String> getUnflushedDates() {
+        return unflushedDates;
+    }
+
+    /**
+     * Progress of each project as it was when this instance claimed it, before making any progress itself.
+     */
+    public Map<String, ProjectCheckpoint> getResumedProgress() {
+        return resumedProgress;
+    }
+
+    public void setResumedProgress(Map<String, ProjectCheckpoint> resumedProgress) {
+        this.resumedProgress = resumedProgress;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.gitlabcommitlog.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Exclusive, expiring ownership of a unit of sync work, such as all syncs of one token. The owner renews
+ * {@code expiresAt} while it works; once it lapses any instance may take the lease over. Lapsed leases
+ * that nobody took over are removed a day later.
+ */
+@Document(collection = "sync_leases")
+public class SyncLease {
+    @Id
+    private String id;
+    private String owner;
+    private Instant acquiredAt;
+    @Indexed(name = "expires_ttl", expireAfter = "1d")
+    private Instant expiresAt;
+
+    public SyncLease() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public Instant getAcquiredAt() {
+        return acquiredAt;
+    }
+
+    public void setAcquiredAt(Instant acquiredAt) {
+        this.acquiredAt = acquiredAt;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
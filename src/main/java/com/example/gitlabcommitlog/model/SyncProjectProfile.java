@@ -0,0 +1,74 @@
+package com.example.gitlabcommitlog.model;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SyncProjectProfile {
+    private String name;
+    private long wallMillis;
+    private long apiRequests;
+    private long apiBytes;
+    private long commitsSeen;
+    private long commitsDeduped;
+    private List<SyncBranchProfile> branches = new ArrayList<>();
+
+    public SyncProjectProfile() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    public void setWallMillis(long wallMillis) {
+        this.wallMillis = wallMillis;
+    }
+
+    public long getApiRequests() {
+        return apiRequests;
+    }
+
+    public void setApiRequests(long apiRequests) {
+        this.apiRequests = apiRequests;
+    }
+
+    public long getApiBytes() {
+        return apiBytes;
+    }
+
+    public void setApiBytes(long apiBytes) {
+        this.apiBytes = apiBytes;
+    }
+
+    public long getCommitsSeen() {
+        return commitsSeen;
+    }
+
+    public void setCommitsSeen(long commitsSeen) {
+        this.commitsSeen = commitsSeen;
+    }
+
+    public long getCommitsDeduped() {
+        return commitsDeduped;
+    }
+
+    public void setCommitsDeduped(long commitsDeduped) {
+        this.commitsDeduped = commitsDeduped;
+    }
+
+    public List<SyncBranchProfile> getBranches() {
+        return branches;
+    }
+
+    public void setBranches(List<SyncBranchProfile> branches) {
+        this.branches = branches;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.gitlabcommitlog.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@Document(collection = "sync_runs")
+@CompoundIndex(name = "token_hash_provider_started", def = "{'tokenHash': 1, 'provider': 1, 'startedAt': -1}")
+public class SyncRun {
+    @Id
+    private String id;
+    private String provider;
+    /**
+     * SHA-256 of the token; the token itself is never stored with a run.
+     */
+    private String tokenHash;
+    private String rangeStart;
+    private String rangeEnd;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String status;
+    private String error;
+    private long wallMillis;
+    private long apiRequests;
+    private long apiBytes;
+    private long commitsSeen;
+    private long commitsDeduped;
+    private long commitsIngested;
+    private long rateLimitWaitMillis;
+    private long mongoMillis;
+    private List<SyncProjectProfile> projects = new ArrayList<>();
+
+    public SyncRun() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    @JsonIgnore
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public String getRangeStart() {
+        return rangeStart;
+    }
+
+    public void setRangeStart(String rangeStart) {
+        this.rangeStart = rangeStart;
+    }
+
+    public String getRangeEnd() {
+        return rangeEnd;
+    }
+
+    public void setRangeEnd(String rangeEnd) {
+        this.rangeEnd = rangeEnd;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    public void setWallMillis(long wallMillis) {
+        this.wallMillis = wallMillis;
+    }
+
+    public long getApiRequests() {
+        return apiRequests;
+    }
+
+    public void setApiRequests(long apiRequests) {
+        this.apiRequests = apiRequests;
+    }
+
+    public long getApiBytes() {
+        return apiBytes;
+    }
+
+    public void setApiBytes(long apiBytes) {
+        this.apiBytes = apiBytes;
+    }
+
+    public long getCommitsSeen() {
+        return commitsSeen;
+    }
+
+    public void setCommitsSeen(long commitsSeen) {
+        this.commitsSeen = commitsSeen;
+    }
+
+    public long getCommitsDeduped() {
+        return commitsDeduped;
+    }
+
+    public void setCommitsDeduped(long commitsDeduped) {
+        this.commitsDeduped = commitsDeduped;
+    }
+
+    public long getCommitsIngested() {
+        return commitsIngested;
+    }
+
+    public void setCommitsIngested(long commitsIngested) {
+        this.commitsIngested = commitsIngested;
+    }
+
+    public long getRateLimitWaitMillis() {
+        return rateLimitWaitMillis;
+    }
+
+    public void setRateLimitWaitMillis(long rateLimitWaitMillis) {
+        this.rateLimitWaitMillis = rateLimitWaitMillis;
+    }
+
+    public long getMongoMillis() {
+        return mongoMillis;
+    }
+
+    public void setMongoMillis(long mongoMillis) {
+        this.mongoMillis = mongoMillis;
+    }
+
+    public List<SyncProjectProfile> getProjects() {
+        return projects;
+    }
+
+    public void setProjects(List<SyncProjectProfile> projects) {
+        this.projects = projects;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.gitlabcommitlog.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Sync state of one token, keyed {@code provider:tokenHash}. {@code version} grows by one whenever a sync of the
+ * token flushes progress or ends, successfully or not, and identifies the data that read endpoints tag their
+ * responses with.
+ * {@code rangeStart}/{@code rangeEnd} span every range synced successfully.
+ */
+@Document(collection = "sync_states")
+public class SyncState {
+    public static final String IDLE = "idle";
+    public static final String SYNCING = "syncing";
+    public static final String FAILED = "failed";
+    public static final String PARTIAL = "partial";
+
+    @Id
+    private String id;
+    private String provider;
+    private String tokenHash;
+    private String status;
+    private String rangeStart;
+    private String rangeEnd;
+    private Instant lastStartedAt;
+    private Instant lastSyncedAt;
+    private String lastError;
+    private long version;
+    /**
+     * When {@code version} last moved; instances poll for states moved since their last look.
+     */
+    @Indexed
+    private Instant versionedAt;
+    private Instant refreshClaimedAt;
+
+    public SyncState() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getRangeStart() {
+        return rangeStart;
+    }
+
+    public void setRangeStart(String rangeStart) {
+        this.rangeStart = rangeStart;
+    }
+
+    public String getRangeEnd() {
+        return rangeEnd;
+    }
+
+    public void setRangeEnd(String rangeEnd) {
+        this.rangeEnd = rangeEnd;
+    }
+
+    public Instant getLastStartedAt() {
+        return lastStartedAt;
+    }
+
+    public void setLastStartedAt(Instant lastStartedAt) {
+        this.lastStartedAt = lastStartedAt;
+    }
+
+    /**
+     * End of the last successful sync; {@code null} if the token has data from before sync states existed.
+     */
+    public Instant getLastSyncedAt() {
+        return lastSyncedAt;
+    }
+
+    public void setLastSyncedAt(Instant lastSyncedAt) {
+        this.lastSyncedAt = lastSyncedAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Instant getVersionedAt() {
+        return versionedAt;
+    }
+
+    public void setVersionedAt(Instant versionedAt) {
+        this.versionedAt = versionedAt;
+    }
+
+    /**
+     * When an instance last took on a background refresh of the token.
+     */
+    public Instant getRefreshClaimedAt() {
+        return refreshClaimedAt;
+    }
+
+    public void setRefreshClaimedAt(Instant refreshClaimedAt) {
+        this.refreshClaimedAt = refreshClaimedAt;
+    }
+}
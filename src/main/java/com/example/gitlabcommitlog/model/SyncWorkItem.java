@@ -0,0 +1,203 @@
+package com.example.gitlabcommitlog.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One repository of a sync run, published so that any instance can process it. {@code runId} is the id of
+ * the run's {@link SyncCheckpoint}, which every instance working on the run writes its progress to.
+ * {@code claimId} changes on every claim and fences out writes of a previous owner whose claim lapsed.
+ * Repositories are claimed in {@code priority} order, most recently active first. Items carry the token's
+ * hash only; the instance processing one has to know the token already.
+ */
+@Document(collection = "sync_work")
+@CompoundIndexes({
+        @CompoundIndex(name = "run_status", def = "{'runId': 1, 'status': 1}"),
+        @CompoundIndex(name = "provider_status", def = "{'provider': 1, 'status': 1}"),
+        @CompoundIndex(name = "run_status_priority", def = "{'runId': 1, 'status': 1, 'priority': 1}")
+})
+public class SyncWorkItem {
+    @Id
+    private String id;
+    private String runId;
+    private String coordinator;
+    private String provider;
+    private String tokenHash;
+    private String scope;
+    private String authorId;
+    private String rangeStart;
+    private String rangeEnd;
+    private String projectKey;
+    private Map<String, Object> project = new HashMap<>();
+    private int priority;
+    private String status;
+    private String owner;
+    private String claimId;
+    private Instant leaseExpiresAt;
+    private int attempts;
+    @Indexed(name = "updated_ttl", expireAfter = "7d")
+    private Instant updatedAt;
+
+    public SyncWorkItem() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public void setRunId(String runId) {
+        this.runId = runId;
+    }
+
+    /**
+     * Instance that published the item and finalizes the run.
+     */
+    public String getCoordinator() {
+        return coordinator;
+    }
+
+    public void setCoordinator(String coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public void setScope(String scope) {
+        this.scope = scope;
+    }
+
+    public String getAuthorId() {
+        return authorId;
+    }
+
+    public void setAuthorId(String authorId) {
+        this.authorId = authorId;
+    }
+
+    public String getRangeStart() {
+        return rangeStart;
+    }
+
+    public void setRangeStart(String rangeStart) {
+        this.rangeStart = rangeStart;
+    }
+
+    public String getRangeEnd() {
+        return rangeEnd;
+    }
+
+    public void setRangeEnd(String rangeEnd) {
+        this.rangeEnd = rangeEnd;
+    }
+
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    public void setProjectKey(String projectKey) {
+        this.projectKey = projectKey;
+    }
+
+    /**
+     * Fields of the provider's project listing that the sync needs.
+     */
+    public Map<String, Object> getProject() {
+        return project;
+    }
+
+    public void setProject(Map<String, Object> project) {
+        this.project = project;
+    }
+
+    /**
+     * Position of the repository in the run's activity order; lower values are claimed first.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public String getClaimId() {
+        return claimId;
+    }
+
+    public void setClaimId(String claimId) {
+        this.claimId = claimId;
+    }
+
+    public Instant getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(Instant leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.gitlabcommitlog.service;
+
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Most active repositories, authors, branches, weekdays and hours of a token, ranked from the count
+ * collections of {@link CommitDayCountStore}. Results are cached per token until its sync version changes,
+ * so a dashboard reloading the same rankings does not aggregate again. Tokens not read for a while are dropped.
+ */
+@Component
+public class ActivityAnalytics {
+    public static final int MAX_LIMIT = 100;
+    private static final int MAX_CACHED_PER_TOKEN = 64;
+    private static final long IDLE_EXPIRY_MILLIS = 600_000;
+    private static final long SWEEP_INTERVAL_MILLIS = 60_000;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    private final CommitDayCountStore dayCounts;
+    private final SyncVersionTracker syncVersions;
+    private final Map<String, TokenCache> cache = new ConcurrentHashMap<>();
+    private volatile long sweptAt = System.currentTimeMillis();
+
+    public ActivityAnalytics(CommitDayCountStore dayCounts, SyncVersionTracker syncVersions) {
+        this.dayCounts = dayCounts;
+        this.syncVersions = syncVersions;
+    }
+
+    public Map<String, Object> top(String provider, Class<?> recordType, String token, LocalDate start,
+                                   LocalDate end, CommitDayCountStore.Dimension dimension, int limit) {
+        long version = syncVersions.currentVersion(provider, token);
+        evictIdle();
+        TokenCache tokenCache = cache.compute(provider + ":" + SyncProfiler.tokenHash(token),
+                (key, cached) -> cached != null && cached.version == version ? cached : new TokenCache(version));
+        tokenCache.readAt = System.currentTimeMillis();
+        String queryKey = dimension.key() + "|" + start + "|" + end + "|" + limit;
+        Map<String, Object> cached = tokenCache.results.get(queryKey);
+        if (cached != null) {
+            return cached;
+        }
+        List<Map<String, Object>> items = dayCounts.top(provider, recordType, token, start, end, dimension, limit);
+        Map<String, Object> response = new HashMap<>();
+        response.put("dimension", dimension.key());
+        response.put("from", start.format(DATE_FORMATTER));
+        response.put("to", end.format(DATE_FORMATTER));
+        response.put("items", items);
+        tokenCache.results.put(queryKey, response);
+        return response;
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        if (now - sweptAt < SWEEP_INTERVAL_MILLIS) {
+            return;
+        }
+        sweptAt = now;
+        cache.values().removeIf(tokenCache -> tokenCache.readAt < now - IDLE_EXPIRY_MILLIS);
+    }
+
+    /**
+     * Rankings computed at one sync version, least recently used dropped first.
+     */
+    private static final class TokenCache {
+        private final long version;
+        private final Map<String, Map<String, Object>> results = Collections.synchronizedMap(
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Map<String, Object>> eldest) {
+                        return size() > MAX_CACHED_PER_TOKEN;
+                    }
+                });
+        private volatile long readAt = System.currentTimeMillis();
+
+        private TokenCache(long version) {
+            this.version = version;
+        }
+    }
+}
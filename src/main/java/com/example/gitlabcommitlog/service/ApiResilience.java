@@ -0,0 +1,344 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.config.ApiResilienceProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Retries with backoff or {@code Retry-After}, rate-limit waits, per-host circuit breaking and optional hedging
+ * for the API clients. No wait outlasts {@code max-retry-after} or the running sync's deadline.
+ */
+@Component
+public class ApiResilience implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ApiResilience.class);
+
+    private final ApiResilienceProperties properties;
+    private final SyncMetrics metrics;
+    private final SyncProfiler profiler;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private final Map<String, Long> rateLimitResetAt = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor hedges;
+
+    public ApiResilience(ApiResilienceProperties properties, SyncMetrics metrics, SyncProfiler profiler) {
+        this.properties = properties;
+        this.metrics = metrics;
+        this.profiler = profiler;
+        if (properties.getHedgeDelay().isZero() || properties.getHedgeDelay().isNegative()) {
+            this.hedges = null;
+            return;
+        }
+        AtomicInteger threads = new AtomicInteger();
+        this.hedges = new ThreadPoolExecutor(0, Math.max(properties.getHedgeThreads(), 2), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), task -> {
+                    Thread thread = new Thread(task, "api-hedge-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public <T> ResponseEntity<T> execute(String provider, String endpoint, URI uri, String token,
+                                         Supplier<ResponseEntity<T>> request) {
+        String host = uri.getScheme() + "://" + uri.getAuthority();
+        Circuit circuit = circuits.computeIfAbsent(host, key -> new Circuit(provider, key));
+        String rateLimitKey = provider + ":" + (token == null ? "" : token);
+        int maxAttempts = Math.max(properties.getMaxAttempts(), 1);
+        for (int attempt = 1; ; attempt++) {
+            awaitRateLimitReset(provider, rateLimitKey);
+            circuit.await();
+            try {
+                ResponseEntity<T> response = hedged(provider, endpoint, request);
+                circuit.onSuccess();
+                trackRateLimit(rateLimitKey, response.getHeaders());
+                return response;
+            } catch (RestClientResponseException e) {
+                int status = e.getStatusCode().value();
+                if (status >= 500) {
+                    circuit.onFailure();
+                } else {
+                    // The host answered; throttling and client errors say nothing about its health.
+                    circuit.onSuccess();
+                }
+                trackRateLimit(rateLimitKey, e.getResponseHeaders());
+                long delayMillis = retryDelayMillis(e, attempt);
+                if (delayMillis < 0 || attempt >= maxAttempts || exceedsDeadline(delayMillis)) {
+                    throw e;
+                }
+                retryAfter(provider, endpoint, String.valueOf(status), attempt, delayMillis);
+            } catch (ResourceAccessException e) {
+                circuit.onFailure();
+                long delayMillis = backoffMillis(attempt);
+                if (attempt >= maxAttempts || exceedsDeadline(delayMillis)) {
+                    throw e;
+                }
+                retryAfter(provider, endpoint, "IO_ERROR", attempt, delayMillis);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (hedges != null) {
+            hedges.shutdownNow();
+        }
+    }
+
+    private <T> ResponseEntity<T> hedged(String provider, String endpoint, Supplier<ResponseEntity<T>> request) {
+        if (hedges == null) {
+            return request.get();
+        }
+        CompletionService<ResponseEntity<T>> race = new ExecutorCompletionService<>(hedges);
+        Future<ResponseEntity<T>> primary;
+        try {
+            primary = race.submit(profiler.onBehalfOfCurrent(request::get));
+        } catch (RejectedExecutionException e) {
+            return request.get();
+        }
+        Future<ResponseEntity<T>> hedge = null;
+        try {
+            Future<ResponseEntity<T>> first = race.poll(properties.getHedgeDelay().toMillis(), TimeUnit.MILLISECONDS);
+            if (first != null) {
+                return result(first);
+            }
+            try {
+                hedge = race.submit(profiler.onBehalfOfCurrent(request::get));
+                metrics.recordApiHedge(provider, endpoint, "sent");
+            } catch (RejectedExecutionException e) {
+                return result(primary);
+            }
+            first = race.take();
+            Future<ResponseEntity<T>> second = first == primary ? hedge : primary;
+            try {
+                ResponseEntity<T> response = result(first);
+                if (first == hedge) {
+                    metrics.recordApiHedge(provider, endpoint, "won");
+                }
+                return response;
+            } catch (RuntimeException e) {
+                // The other request may still succeed; its failure is the one reported otherwise.
+                return result(second);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an API response", e);
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private <T> T result(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Milliseconds to wait before retrying a failed response, or -1 if it must not be retried.
+     */
+    private long retryDelayMillis(RestClientResponseException e, int attempt) {
+        int status = e.getStatusCode().value();
+        HttpHeaders headers = e.getResponseHeaders();
+        boolean exhausted = headers != null && ("0".equals(headers.getFirst("X-RateLimit-Remaining"))
+                || "0".equals(headers.getFirst("RateLimit-Remaining")));
+        Long retryAfter = headers == null ? null : parseRetryAfter(headers.getFirst(HttpHeaders.RETRY_AFTER));
+        boolean retryable = switch (status) {
+            case 408, 429, 500, 502, 503, 504 -> true;
+            // GitHub answers both its primary and its secondary rate limits with 403.
+            case 403 -> exhausted || retryAfter != null
+                    || e.getResponseBodyAsString().toLowerCase(Locale.ROOT).contains("rate limit");
+            default -> false;
+        };
+        if (!retryable) {
+            return -1;
+        }
+        Long resetIn = exhausted ? resetMillis(headers) : null;
+        Long wait = retryAfter != null ? retryAfter : resetIn;
+        if (wait != null) {
+            return wait > properties.getMaxRetryAfter().toMillis() ? -1 : wait;
+        }
+        return backoffMillis(attempt);
+    }
+
+    private void trackRateLimit(String rateLimitKey, HttpHeaders headers) {
+        if (headers == null || !("0".equals(headers.getFirst("X-RateLimit-Remaining"))
+                || "0".equals(headers.getFirst("RateLimit-Remaining")))) {
+            return;
+        }
+        Long resetIn = resetMillis(headers);
+        if (resetIn != null) {
+            rateLimitResetAt.put(rateLimitKey, System.currentTimeMillis() + resetIn);
+        }
+    }
+
+    private void awaitRateLimitReset(String provider, String rateLimitKey) {
+        Long resetAt = rateLimitResetAt.get(rateLimitKey);
+        if (resetAt == null) {
+            return;
+        }
+        long waitMillis = resetAt - System.currentTimeMillis();
+        if (waitMillis <= 0) {
+            rateLimitResetAt.remove(rateLimitKey, resetAt);
+            return;
+        }
+        if (waitMillis > properties.getMaxRetryAfter().toMillis()) {
+            profiler.recordRateLimitExhausted(Instant.ofEpochMilli(resetAt));
+            throw new RateLimitExhaustedException(provider + " rate limit resets in " + waitMillis / 1000
+                    + "s, beyond max-retry-after", Instant.ofEpochMilli(resetAt));
+        }
+        if (exceedsDeadline(waitMillis)) {
+            throw new SyncDeadlineException(provider + " rate limit resets after the sync deadline");
+        }
+        logger.warn("{} rate limit exhausted, waiting {} ms for reset", provider, waitMillis);
+        long startNanos = System.nanoTime();
+        try {
+            sleep(waitMillis);
+        } finally {
+            profiler.recordRateLimitWait(System.nanoTime() - startNanos);
+        }
+        rateLimitResetAt.remove(rateLimitKey, resetAt);
+    }
+
+    /**
+     * {@code X-RateLimit-Reset} (GitHub) or {@code RateLimit-Reset} (GitLab), both in epoch seconds.
+     */
+    private Long resetMillis(HttpHeaders headers) {
+        String reset = headers.getFirst("X-RateLimit-Reset");
+        if (reset == null) {
+            reset = headers.getFirst("RateLimit-Reset");
+        }
+        if (reset == null) {
+            return null;
+        }
+        try {
+            return Math.max(Long.parseLong(reset.trim()) * 1000L - System.currentTimeMillis(), 0L);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean exceedsDeadline(long waitMillis) {
+        Instant deadline = profiler.currentDeadline();
+        return deadline != null && System.currentTimeMillis() + waitMillis > deadline.toEpochMilli();
+    }
+
+    private Long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Math.max(Long.parseLong(value.trim()) * 1000L, 0L);
+        } catch (NumberFormatException ignored) {
+            // Not delta-seconds, so it should be an HTTP date.
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis(), 0L);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private long backoffMillis(int attempt) {
+        long cap = Math.min(properties.getMaxBackoff().toMillis(),
+                properties.getInitialBackoff().toMillis() << Math.min(attempt - 1, 20));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    private void retryAfter(String provider, String endpoint, String reason, int attempt, long delayMillis) {
+        metrics.recordApiRetry(provider, endpoint, reason);
+        logger.warn("Retrying {} API request, endpoint={}, reason={}, attempt={}, delayMs={}", provider, endpoint,
+                reason, attempt, delayMillis);
+        sleep(delayMillis);
+    }
+
+    private void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry an API request", e);
+        }
+    }
+
+    private final class Circuit {
+        private final String provider;
+        private final String host;
+        private int consecutiveFailures;
+        private long openUntil;
+
+        private Circuit(String provider, String host) {
+            this.provider = provider;
+            this.host = host;
+        }
+
+        void await() {
+            long waitMillis;
+            synchronized (this) {
+                waitMillis = openUntil - System.currentTimeMillis();
+            }
+            if (waitMillis > 0) {
+                if (exceedsDeadline(waitMillis)) {
+                    throw new SyncDeadlineException("Circuit of " + host + " stays open past the sync deadline");
+                }
+                logger.info("Circuit of {} is open, waiting {} ms", host, waitMillis);
+                sleep(waitMillis);
+            }
+        }
+
+        synchronized void onSuccess() {
+            if (consecutiveFailures >= properties.getCircuitFailureThreshold()) {
+                logger.info("Circuit of {} closed", host);
+            }
+            consecutiveFailures = 0;
+            openUntil = 0;
+        }
+
+        synchronized void onFailure() {
+            consecutiveFailures++;
+            if (consecutiveFailures >= properties.getCircuitFailureThreshold()) {
+                openUntil = System.currentTimeMillis() + properties.getCircuitOpenDuration().toMillis();
+                metrics.recordCircuitOpened(provider, host);
+                logger.warn("Circuit of {} opened after {} consecutive failures", host, consecutiveFailures);
+            }
+        }
+    }
+}
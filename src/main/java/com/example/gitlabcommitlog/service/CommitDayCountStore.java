@@ -0,0 +1,224 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.CommitDayCount;
+import com.example.gitlabcommitlog.model.CommitHourCount;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.StringOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Commit counts per day and per hour by repository, branch and author, for filtered heatmaps and rankings.
+ */
+@Component
+public class CommitDayCountStore {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    private final MongoTemplate mongoTemplate;
+    private final Set<String> indexedTokens = ConcurrentHashMap.newKeySet();
+
+    public CommitDayCountStore(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * What activity is ranked by, and the count collection and field it is summed from.
+     */
+    public enum Dimension {
+        REPOSITORIES("repository", CommitDayCount.class),
+        AUTHORS("author", CommitDayCount.class),
+        BRANCHES("branch", CommitDayCount.class),
+        WEEKDAYS("weekday", CommitHourCount.class),
+        HOURS("hour", CommitHourCount.class);
+
+        private final String field;
+        private final Class<?> countType;
+
+        Dimension(String field, Class<?> countType) {
+            this.field = field;
+            this.countType = countType;
+        }
+
+        /**
+         * Parse a dimension name; throws {@link IllegalArgumentException} for unknown names.
+         */
+        public static Dimension parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Recount [start, end] from the token's commit rows in {@code recordType}'s collection.
+     */
+    public void refresh(String provider, Class<?> recordType, String token, LocalDate start, LocalDate end) {
+        int from = SharedCommitStore.dayKey(start);
+        int to = SharedCommitStore.dayKey(end);
+        String tokenHash = SyncProfiler.tokenHash(token);
+        mongoTemplate.remove(new Query(Criteria.where("provider").is(provider).and("tokenHash").is(tokenHash)
+                .and("day").gte(from).lte(to)), CommitDayCount.class);
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("token").is(token).and("committedDay").gte(from).lte(to)),
+                Aggregation.group("repository", "branch", "author", "committedDay").count().as("count"));
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CommitDayCount.class);
+        int upserts = 0;
+        for (Document group : mongoTemplate.aggregate(aggregation, recordType, Document.class)) {
+            Document key = group.get("_id", Document.class);
+            String repository = key.getString("repository");
+            String branch = key.getString("branch");
+            String author = key.getString("author");
+            int day = key.getInteger("committedDay", 0);
+            String id = provider + ":" + tokenHash + ":" + repository + ":" + branch + ":" + author + ":" + day;
+            bulk.upsert(new Query(Criteria.where("_id").is(id)), new Update()
+                    .set("provider", provider)
+                    .set("tokenHash", tokenHash)
+                    .set("repository", repository)
+                    .set("branch", branch)
+                    .set("author", author)
+                    .set("day", day)
+                    .set("count", ((Number) group.get("count")).intValue()));
+            upserts++;
+        }
+        if (upserts > 0) {
+            bulk.execute();
+        }
+        refreshHours(provider, recordType, token, tokenHash, from, to);
+        indexedTokens.add(provider + ":" + tokenHash);
+    }
+
+    /**
+     * Commits per day of [start, end], keyed by {@code yyyy-MM-dd}, restricted to the given repository, branch
+     * and author where they are not blank. Days without commits are absent.
+     */
+    public Map<String, Integer> dailyCounts(String provider, Class<?> recordType, String token, LocalDate start,
+                                            LocalDate end, String repository, String branch, String author) {
+        ensureIndexed(provider, recordType, token);
+        Criteria criteria = Criteria.where("provider").is(provider).and("tokenHash").is(SyncProfiler.tokenHash(token))
+                .and("day").gte(SharedCommitStore.dayKey(start)).lte(SharedCommitStore.dayKey(end));
+        if (repository != null && !repository.isBlank()) {
+            criteria.and("repository").is(repository);
+        }
+        if (branch != null && !branch.isBlank()) {
+            criteria.and("branch").is(branch);
+        }
+        if (author != null && !author.isBlank()) {
+            criteria.and("author").is(author);
+        }
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.group("day").sum("count").as("count"));
+        Map<String, Integer> counts = new HashMap<>();
+        for (Document bucket : mongoTemplate.aggregate(aggregation, CommitDayCount.class, Document.class)) {
+            LocalDate day = SharedCommitStore.fromDayKey(bucket.getInteger("_id"));
+            counts.put(day.format(DATE_FORMATTER), ((Number) bucket.get("count")).intValue());
+        }
+        return counts;
+    }
+
+    /**
+     * The {@code limit} most active values of {@code dimension} over [start, end], most commits first, each as
+     * {@code key} and {@code count}. Weekdays are 1 for Monday through 7 for Sunday, hours 0 to 23.
+     */
+    public List<Map<String, Object>> top(String provider, Class<?> recordType, String token, LocalDate start,
+                                         LocalDate end, Dimension dimension, int limit) {
+        ensureIndexed(provider, recordType, token);
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("provider").is(provider)
+                        .and("tokenHash").is(SyncProfiler.tokenHash(token))
+                        .and("day").gte(SharedCommitStore.dayKey(start)).lte(SharedCommitStore.dayKey(end))),
+                Aggregation.group(dimension.field).sum("count").as("count"),
+                Aggregation.sort(Sort.by(Sort.Direction.DESC, "count").and(Sort.by(Sort.Direction.ASC, "_id"))),
+                Aggregation.limit(limit));
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (Document bucket : mongoTemplate.aggregate(aggregation, dimension.countType, Document.class)) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("key", bucket.get("_id"));
+            item.put("count", ((Number) bucket.get("count")).intValue());
+            items.add(item);
+        }
+        return items;
+    }
+
+    private void refreshHours(String provider, Class<?> recordType, String token, String tokenHash, int from,
+                              int to) {
+        mongoTemplate.remove(new Query(Criteria.where("provider").is(provider).and("tokenHash").is(tokenHash)
+                .and("day").gte(from).lte(to)), CommitHourCount.class);
+        // committedAt keeps the committer's offset, so characters 11-12 are the committer-local hour.
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("token").is(token).and("committedDay").gte(from).lte(to)),
+                Aggregation.project("committedDay")
+                        .and(StringOperators.Substr.valueOf("committedAt").substring(11, 2)).as("hour"),
+                Aggregation.group("committedDay", "hour").count().as("count"));
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CommitHourCount.class);
+        int upserts = 0;
+        for (Document group : mongoTemplate.aggregate(aggregation, recordType, Document.class)) {
+            Document key = group.get("_id", Document.class);
+            int day = key.getInteger("committedDay", 0);
+            String hourText = key.getString("hour");
+            if (hourText == null || !hourText.matches("\\d{2}")) {
+                continue;
+            }
+            int hour = Integer.parseInt(hourText);
+            String id = provider + ":" + tokenHash + ":" + day + ":" + hour;
+            bulk.upsert(new Query(Criteria.where("_id").is(id)), new Update()
+                    .set("provider", provider)
+                    .set("tokenHash", tokenHash)
+                    .set("day", day)
+                    .set("weekday", SharedCommitStore.fromDayKey(day).getDayOfWeek().getValue())
+                    .set("hour", hour)
+                    .set("count", ((Number) group.get("count")).intValue()));
+            upserts++;
+        }
+        if (upserts > 0) {
+            bulk.execute();
+        }
+    }
+
+    /**
+     * Count the whole history of a token whose commits were stored before the counts existed.
+     */
+    public void ensureIndexed(String provider, Class<?> recordType, String token) {
+        String tokenHash = SyncProfiler.tokenHash(token);
+        if (indexedTokens.contains(provider + ":" + tokenHash)) {
+            return;
+        }
+        // Hour counts are written last, so they only exist once a token has been counted.
+        if (mongoTemplate.exists(new Query(Criteria.where("provider").is(provider).and("tokenHash").is(tokenHash)),
+                CommitHourCount.class)) {
+            indexedTokens.add(provider + ":" + tokenHash);
+            return;
+        }
+        // Sorted by the indexed commit time; the committer-local day can differ from its UTC order by a day.
+        Criteria dated = Criteria.where("token").is(token).and("committedDay").gt(0);
+        String collection = mongoTemplate.getCollectionName(recordType);
+        Document first = mongoTemplate.findOne(new Query(dated).with(Sort.by(Sort.Direction.ASC, "committedTime")),
+                Document.class, collection);
+        if (first == null) {
+            return;
+        }
+        Document last = mongoTemplate.findOne(new Query(dated).with(Sort.by(Sort.Direction.DESC, "committedTime")),
+                Document.class, collection);
+        LocalDate earliest = SharedCommitStore.fromDayKey(first.getInteger("committedDay"));
+        LocalDate latest = SharedCommitStore.fromDayKey(last.getInteger("committedDay"));
+        refresh(provider, recordType, token, earliest.minusDays(1), latest.plusDays(1));
+    }
+}
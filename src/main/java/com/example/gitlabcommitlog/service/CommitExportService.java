@@ -0,0 +1,132 @@
+package com.example.gitlabcommitlog.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Streams commit records straight from a Mongo cursor to the response. Rows are written as they are read,
+ * so memory stays flat regardless of the export size and a slow client simply slows down the cursor.
+ */
+@Service
+public class CommitExportService {
+    private static final Logger logger = LoggerFactory.getLogger(CommitExportService.class);
+    private static final List<String> FIELDS =
+            List.of("sha", "repository", "branch", "committedAt", "author", "message", "url");
+    private static final int CURSOR_BATCH_SIZE = 500;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+
+    public CommitExportService(MongoTemplate mongoTemplate, ObjectMapper objectMapper) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    public void export(Class<?> recordType, String project, String branch, String format, String token,
+                       OutputStream outputStream) throws IOException {
+        if (token == null || token.isBlank()) {
+            return;
+        }
+        Aggregation aggregation = buildAggregation(project, branch, token);
+        String collection = mongoTemplate.getCollectionName(recordType);
+        long rows = 0;
+        OutputStream buffered = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        try (Stream<Document> cursor = mongoTemplate.aggregateStream(aggregation, collection, Document.class)) {
+            if ("csv".equalsIgnoreCase(format)) {
+                rows = writeCsv(cursor, buffered);
+            } else {
+                rows = writeNdjson(cursor, buffered);
+            }
+        } finally {
+            buffered.flush();
+            logger.info("Commit export finished, collection={}, format={}, rows={}", collection, format, rows);
+        }
+    }
+
+    private long writeNdjson(Stream<Document> cursor, OutputStream outputStream) throws IOException {
+        long rows = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            for (Document document : (Iterable<Document>) cursor::iterator) {
+                generator.writeStartObject();
+                for (String field : FIELDS) {
+                    Object value = document.get(field);
+                    generator.writeStringField(field, value == null ? null : value.toString());
+                }
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private long writeCsv(Stream<Document> cursor, OutputStream outputStream) throws IOException {
+        long rows = 0;
+        Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        writer.write(String.join(",", FIELDS));
+        writer.write("\r\n");
+        for (Document document : (Iterable<Document>) cursor::iterator) {
+            for (int i = 0; i < FIELDS.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                Object value = document.get(FIELDS.get(i));
+                writer.write(escapeCsv(value == null ? "" : value.toString()));
+            }
+            writer.write("\r\n");
+            rows++;
+        }
+        writer.flush();
+        return rows;
+    }
+
+    private Aggregation buildAggregation(String project, String branch, String token) {
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(Criteria.where("token").is(token));
+        if (project != null && !project.isBlank()) {
+            criteria.add(Criteria.where("repository").regex(buildContainsRegex(project)));
+        }
+        if (branch != null && !branch.isBlank()) {
+            criteria.add(Criteria.where("branch").regex(buildContainsRegex(branch)));
+        }
+        return Aggregation.newAggregation(
+                Aggregation.match(new Criteria().andOperator(criteria.toArray(new Criteria[0]))),
+                Aggregation.sort(Sort.by(Sort.Direction.DESC, "committedTime")),
+                Aggregation.project().andExclude("token"))
+                .withOptions(AggregationOptions.builder().cursorBatchSize(CURSOR_BATCH_SIZE).build());
+    }
+
+    private String escapeCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private Pattern buildContainsRegex(String input) {
+        String escaped = Pattern.quote(input.trim());
+        return Pattern.compile(".*" + escaped + ".*", Pattern.CASE_INSENSITIVE);
+    }
+}
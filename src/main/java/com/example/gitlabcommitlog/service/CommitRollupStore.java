@@ -0,0 +1,221 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.CommitRollup;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Week, month and year totals, rewritten from the daily counts for every period a finished sync touched.
+ */
+@Component
+public class CommitRollupStore {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+    /**
+     * The automatic granularity is the finest one that renders the range in at most this many buckets.
+     */
+    private static final int MAX_BUCKETS = 400;
+    private static final List<Granularity> ROLLED_UP = List.of(Granularity.WEEK, Granularity.MONTH, Granularity.YEAR);
+
+    private final MongoTemplate mongoTemplate;
+
+    public CommitRollupStore(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public enum Granularity {
+        DAY, WEEK, MONTH, YEAR;
+
+        /**
+         * Parse a granularity name; {@code null}, blank and {@code auto} mean "choose for the range".
+         */
+        public static Granularity parse(String value) {
+            if (value == null || value.isBlank() || "auto".equalsIgnoreCase(value)) {
+                return null;
+            }
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+
+        LocalDate periodStart(LocalDate date) {
+            return switch (this) {
+                case DAY -> date;
+                case WEEK -> date.with(DayOfWeek.MONDAY);
+                case MONTH -> date.withDayOfMonth(1);
+                case YEAR -> date.withDayOfYear(1);
+            };
+        }
+
+        LocalDate next(LocalDate periodStart) {
+            return switch (this) {
+                case DAY -> periodStart.plusDays(1);
+                case WEEK -> periodStart.plusWeeks(1);
+                case MONTH -> periodStart.plusMonths(1);
+                case YEAR -> periodStart.plusYears(1);
+            };
+        }
+
+        String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Rewrite the rollups of every period overlapping [start, end] from the daily counts in
+     * {@code dailyType}'s collection.
+     */
+    public void refresh(String provider, Class<?> dailyType, String token, LocalDate start, LocalDate end) {
+        LocalDate from = start;
+        LocalDate to = end;
+        for (Granularity granularity : ROLLED_UP) {
+            LocalDate periodFrom = granularity.periodStart(start);
+            LocalDate periodTo = granularity.next(granularity.periodStart(end)).minusDays(1);
+            from = periodFrom.isBefore(from) ? periodFrom : from;
+            to = periodTo.isAfter(to) ? periodTo : to;
+        }
+        NavigableMap<LocalDate, Integer> daily = loadDaily(dailyType, token, from, to);
+        String tokenHash = SyncProfiler.tokenHash(token);
+        Instant now = Instant.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CommitRollup.class);
+        List<String> emptyIds = new ArrayList<>();
+        int upserts = 0;
+        for (Granularity granularity : ROLLED_UP) {
+            for (LocalDate period = granularity.periodStart(start); !period.isAfter(end);
+                 period = granularity.next(period)) {
+                int count = daily.subMap(period, true, granularity.next(period), false).values().stream()
+                        .mapToInt(Integer::intValue).sum();
+                String id = rollupId(provider, tokenHash, granularity, period);
+                if (count == 0) {
+                    emptyIds.add(id);
+                    continue;
+                }
+                bulk.upsert(new Query(Criteria.where("_id").is(id)), new Update()
+                        .set("provider", provider)
+                        .set("tokenHash", tokenHash)
+                        .set("granularity", granularity.key())
+                        .set("period", period.format(DATE_FORMATTER))
+                        .set("count", count)
+                        .set("updatedAt", now));
+                upserts++;
+            }
+        }
+        if (upserts > 0) {
+            bulk.execute();
+        }
+        if (!emptyIds.isEmpty()) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(emptyIds)), CommitRollup.class);
+        }
+    }
+
+    /**
+     * Counts of [from, to] at {@code granularity}, or at the finest granularity that fits {@link #MAX_BUCKETS}
+     * when it is {@code null}. The range is widened to whole periods; every period is listed, including those
+     * without commits.
+     */
+    public Map<String, Object> heatmap(String provider, Class<?> dailyType, String token, LocalDate from,
+                                       LocalDate to, Granularity granularity) {
+        Granularity resolved = granularity != null ? granularity : choose(from, to);
+        LocalDate alignedFrom = resolved.periodStart(from);
+        LocalDate alignedTo = resolved.next(resolved.periodStart(to)).minusDays(1);
+        Map<LocalDate, Integer> counts;
+        if (resolved == Granularity.DAY) {
+            counts = loadDaily(dailyType, token, alignedFrom, alignedTo);
+        } else {
+            ensureRollups(provider, dailyType, token);
+            counts = loadRollups(provider, token, resolved, alignedFrom, alignedTo);
+        }
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        for (LocalDate period = alignedFrom; !period.isAfter(alignedTo); period = resolved.next(period)) {
+            Map<String, Object> bucket = new HashMap<>();
+            bucket.put("period", period.format(DATE_FORMATTER));
+            bucket.put("count", counts.getOrDefault(period, 0));
+            buckets.add(bucket);
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("granularity", resolved.key());
+        response.put("from", alignedFrom.format(DATE_FORMATTER));
+        response.put("to", alignedTo.format(DATE_FORMATTER));
+        response.put("buckets", buckets);
+        return response;
+    }
+
+    private Granularity choose(LocalDate from, LocalDate to) {
+        for (Granularity granularity : Granularity.values()) {
+            int buckets = 0;
+            LocalDate period = granularity.periodStart(from);
+            while (!period.isAfter(to) && buckets <= MAX_BUCKETS) {
+                period = granularity.next(period);
+                buckets++;
+            }
+            if (buckets <= MAX_BUCKETS) {
+                return granularity;
+            }
+        }
+        return Granularity.YEAR;
+    }
+
+    /**
+     * Build the rollups of a token whose daily counts were stored before rollups existed.
+     */
+    private void ensureRollups(String provider, Class<?> dailyType, String token) {
+        if (mongoTemplate.exists(new Query(Criteria.where("provider").is(provider)
+                .and("tokenHash").is(SyncProfiler.tokenHash(token))), CommitRollup.class)) {
+            return;
+        }
+        String collection = mongoTemplate.getCollectionName(dailyType);
+        Query first = new Query(Criteria.where("token").is(token)).with(Sort.by(Sort.Direction.ASC, "date"));
+        Document earliest = mongoTemplate.findOne(first, Document.class, collection);
+        if (earliest == null) {
+            return;
+        }
+        Query last = new Query(Criteria.where("token").is(token)).with(Sort.by(Sort.Direction.DESC, "date"));
+        Document latest = mongoTemplate.findOne(last, Document.class, collection);
+        refresh(provider, dailyType, token, LocalDate.parse(earliest.getString("date")),
+                LocalDate.parse(latest.getString("date")));
+    }
+
+    private NavigableMap<LocalDate, Integer> loadDaily(Class<?> dailyType, String token, LocalDate from,
+                                                       LocalDate to) {
+        Query query = new Query(Criteria.where("token").is(token)
+                .and("date").gte(from.format(DATE_FORMATTER)).lte(to.format(DATE_FORMATTER)));
+        query.fields().include("date", "count");
+        NavigableMap<LocalDate, Integer> counts = new TreeMap<>();
+        for (Document daily : mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(dailyType))) {
+            counts.merge(LocalDate.parse(daily.getString("date")), daily.getInteger("count", 0), Integer::sum);
+        }
+        return counts;
+    }
+
+    private Map<LocalDate, Integer> loadRollups(String provider, String token, Granularity granularity,
+                                                LocalDate from, LocalDate to) {
+        Query query = new Query(Criteria.where("provider").is(provider)
+                .and("tokenHash").is(SyncProfiler.tokenHash(token))
+                .and("granularity").is(granularity.key())
+                .and("period").gte(from.format(DATE_FORMATTER)).lte(to.format(DATE_FORMATTER)));
+        Map<LocalDate, Integer> counts = new HashMap<>();
+        for (CommitRollup rollup : mongoTemplate.find(query, CommitRollup.class)) {
+            counts.put(LocalDate.parse(rollup.getPeriod()), rollup.getCount());
+        }
+        return counts;
+    }
+
+    private String rollupId(String provider, String tokenHash, Granularity granularity, LocalDate period) {
+        return provider + ":" + tokenHash + ":" + granularity.key() + ":" + period.format(DATE_FORMATTER);
+    }
+}
@@ -9,14 +9,18 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
 import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.ObjIntConsumer;
 
 @Component
 public class GithubClient {
@@ -26,35 +30,56 @@ public class GithubClient {
 
     private final RestTemplate restTemplate;
     private final GithubProperties properties;
+    private final SyncMetrics metrics;
+    private final SyncProfiler profiler;
+    private final ApiResilience resilience;
 
-    public GithubClient(RestTemplate restTemplate, GithubProperties properties) {
+    public GithubClient(RestTemplate restTemplate, GithubProperties properties, SyncMetrics metrics,
+                        SyncProfiler profiler, ApiResilience resilience) {
         this.restTemplate = restTemplate;
         this.properties = properties;
+        this.metrics = metrics;
+        this.profiler = profiler;
+        this.resilience = resilience;
     }
 
-    public List<Map<String, Object>> fetchAllProjects(String token) {
+    /**
+     * List the user's repositories, most recently pushed first. When {@code pushedAfter} is set, paging stops
+     * at the first repository whose last push is older, so inactive repositories are never listed.
+     */
+    public List<Map<String, Object>> fetchAllProjects(String token, OffsetDateTime pushedAfter) {
         String endpoint = properties.getBaseUrl() + "/user/repos";
         List<Map<String, Object>> results = new ArrayList<>();
         int page = 1;
+        boolean reachedInactive = false;
 
-        logger.info("Start fetching user repositories");
-        while (true) {
+        logger.info("Start fetching user repositories, pushedAfter={}", pushedAfter);
+        while (!reachedInactive) {
             URI uri = UriComponentsBuilder.fromHttpUrl(endpoint)
                     .queryParam("visibility", "all")
                     .queryParam("affiliation", "owner,collaborator,organization_member")
+                    .queryParam("sort", "pushed")
+                    .queryParam("direction", "desc")
                     .queryParam("per_page", 100)
                     .queryParam("page", page)
                     .build()
                     .toUri();
 
-            ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(
-                    uri, HttpMethod.GET, new HttpEntity<>(buildHeaders(token)), LIST_MAP_TYPE);
+            ResponseEntity<List<Map<String, Object>>> response = get(uri, "/user/repos", token, LIST_MAP_TYPE);
 
             List<Map<String, Object>> body = response.getBody();
             if (body == null || body.isEmpty()) {
                 break;
             }
-            results.addAll(body);
+            for (Map<String, Object> repo : body) {
+                OffsetDateTime pushedAt = parseTimestamp(repo.get("pushed_at"));
+                if (pushedAfter != null && pushedAt != null && pushedAt.isBefore(pushedAfter)) {
+                    reachedInactive = true;
+                    break;
+                }
+                results.add(repo);
+            }
+            metrics.recordPage(SyncMetrics.GITHUB, "/user/repos");
             logger.info("Fetched repositories page {}, count={}", page, body.size());
             page += 1;
         }
@@ -63,18 +88,34 @@ public class GithubClient {
         return results;
     }
 
+    /**
+     * Login of the token's user, which the commits endpoint accepts as its {@code author} filter.
+     */
+    public String fetchAuthorIdentity(String token) {
+        URI uri = UriComponentsBuilder.fromHttpUrl(properties.getBaseUrl() + "/user").build().toUri();
+        ResponseEntity<Map<String, Object>> response = get(uri, "/user", token, new ParameterizedTypeReference<>() {});
+        Object login = response.getBody() == null ? null : response.getBody().get("login");
+        if (login == null) {
+            throw new IllegalStateException("GitHub user has no login");
+        }
+        return login.toString();
+    }
+
     public Map<String, Integer> fetchLanguages(String fullName, String token) {
         String endpoint = properties.getBaseUrl() + "/repos/" + fullName + "/languages";
         logger.info("Fetching repository languages: {}", fullName);
-        ResponseEntity<Map<String, Integer>> response = restTemplate.exchange(
-                endpoint, HttpMethod.GET, new HttpEntity<>(buildHeaders(token)),
+        URI uri = UriComponentsBuilder.fromHttpUrl(endpoint).build().toUri();
+        ResponseEntity<Map<String, Integer>> response = get(uri, "/repos/{owner}/{repo}/languages", token,
                 new ParameterizedTypeReference<>() {});
         return response.getBody();
     }
 
-    public List<String> fetchBranches(String fullName, String token) {
+    /**
+     * List branches with their head commit SHA, in API order.
+     */
+    public Map<String, String> fetchBranches(String fullName, String token) {
         String endpoint = properties.getBaseUrl() + "/repos/" + fullName + "/branches";
-        List<String> results = new ArrayList<>();
+        Map<String, String> results = new LinkedHashMap<>();
         int page = 1;
 
         logger.info("Start fetching branches: {}", fullName);
@@ -85,8 +126,8 @@ public class GithubClient {
                     .build()
                     .toUri();
 
-            ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(
-                    uri, HttpMethod.GET, new HttpEntity<>(buildHeaders(token)), LIST_MAP_TYPE);
+            ResponseEntity<List<Map<String, Object>>> response =
+                    get(uri, "/repos/{owner}/{repo}/branches", token, LIST_MAP_TYPE);
 
             List<Map<String, Object>> body = response.getBody();
             if (body == null || body.isEmpty()) {
@@ -95,9 +136,11 @@ public class GithubClient {
             for (Map<String, Object> branch : body) {
                 Object name = branch.get("name");
                 if (name != null) {
-                    results.add(name.toString());
+                    Object head = branch.get("commit") instanceof Map<?, ?> commit ? commit.get("sha") : null;
+                    results.put(name.toString(), head == null ? "" : head.toString());
                 }
             }
+            metrics.recordPage(SyncMetrics.GITHUB, "/repos/{owner}/{repo}/branches");
             logger.info("Fetched branches page {}, count={}", page, body.size());
             page += 1;
         }
@@ -106,37 +149,91 @@ public class GithubClient {
         return results;
     }
 
-    public List<Map<String, Object>> fetchCommits(String fullName, String branch, OffsetDateTime since, OffsetDateTime until,
-                                                  String token) {
+    /**
+     * Page through the commits of a branch in the window starting at {@code startPage}, handing each non-empty
+     * page to {@code pageHandler} together with its page number before the next one is requested.
+     * {@code author} (a login), when set, is filtered by GitHub.
+     */
+    public void fetchCommitPages(String fullName, String branch, String author, OffsetDateTime since,
+                                 OffsetDateTime until, int startPage, String token,
+                                 ObjIntConsumer<List<Map<String, Object>>> pageHandler) {
         String endpoint = properties.getBaseUrl() + "/repos/" + fullName + "/commits";
-        List<Map<String, Object>> results = new ArrayList<>();
-        int page = 1;
+        int page = startPage;
+        long total = 0;
 
-        logger.info("Start fetching commits: {}, branch={}", fullName, branch);
+        logger.info("Start fetching commits: {}, branch={}, page={}", fullName, branch, startPage);
         while (true) {
-            URI uri = UriComponentsBuilder.fromHttpUrl(endpoint)
+            UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(endpoint)
                     .queryParam("since", since.toString())
                     .queryParam("until", until.toString())
                     .queryParam("sha", branch)
                     .queryParam("per_page", 100)
-                    .queryParam("page", page)
-                    .build()
-                    .toUri();
+                    .queryParam("page", page);
+            if (author != null) {
+                builder.queryParam("author", author);
+            }
+            URI uri = builder.build().toUri();
 
-            ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(
-                    uri, HttpMethod.GET, new HttpEntity<>(buildHeaders(token)), LIST_MAP_TYPE);
+            ResponseEntity<List<Map<String, Object>>> response =
+                    get(uri, "/repos/{owner}/{repo}/commits", token, LIST_MAP_TYPE);
 
             List<Map<String, Object>> body = response.getBody();
             if (body == null || body.isEmpty()) {
                 break;
             }
-            results.addAll(body);
+            total += body.size();
+            metrics.recordPage(SyncMetrics.GITHUB, "/repos/{owner}/{repo}/commits");
             logger.info("Fetched commits page {}, count={}", page, body.size());
+            pageHandler.accept(body, page);
             page += 1;
         }
 
-        logger.info("Finished fetching commits: {}, branch={}, total={}", fullName, branch, results.size());
-        return results;
+        logger.info("Finished fetching commits: {}, branch={}, total={}", fullName, branch, total);
+    }
+
+    private OffsetDateTime parseTimestamp(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(value.toString());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private <T> ResponseEntity<T> get(URI uri, String endpointTemplate, String token,
+                                      ParameterizedTypeReference<T> responseType) {
+        return resilience.execute(SyncMetrics.GITHUB, endpointTemplate, uri, token,
+                () -> attempt(uri, endpointTemplate, token, responseType));
+    }
+
+    private <T> ResponseEntity<T> attempt(URI uri, String endpointTemplate, String token,
+                                          ParameterizedTypeReference<T> responseType) {
+        long startNanos = System.nanoTime();
+        String status = "IO_ERROR";
+        profiler.recordApiRequest();
+        try {
+            ResponseEntity<T> response = restTemplate.exchange(
+                    uri, HttpMethod.GET, new HttpEntity<>(buildHeaders(token)), responseType);
+            status = String.valueOf(response.getStatusCode().value());
+            trackRateLimit(response.getHeaders());
+            return response;
+        } catch (RestClientResponseException e) {
+            status = String.valueOf(e.getStatusCode().value());
+            trackRateLimit(e.getResponseHeaders());
+            throw e;
+        } finally {
+            metrics.recordApiCall(SyncMetrics.GITHUB, endpointTemplate, status, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void trackRateLimit(HttpHeaders headers) {
+        if (headers == null) {
+            return;
+        }
+        String remaining = headers.getFirst("X-RateLimit-Remaining");
+        metrics.updateRateLimit(SyncMetrics.GITHUB, remaining);
     }
 
     private HttpHeaders buildHeaders(String token) {
@@ -9,14 +9,17 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.ObjIntConsumer;
 
 @Component
 public class GitlabApiClient {
@@ -26,34 +29,48 @@ public class GitlabApiClient {
 
     private final RestTemplate restTemplate;
     private final GitlabProperties properties;
+    private final SyncMetrics metrics;
+    private final SyncProfiler profiler;
+    private final ApiResilience resilience;
 
-    public GitlabApiClient(RestTemplate restTemplate, GitlabProperties properties) {
+    public GitlabApiClient(RestTemplate restTemplate, GitlabProperties properties, SyncMetrics metrics,
+                           SyncProfiler profiler, ApiResilience resilience) {
         this.restTemplate = restTemplate;
         this.properties = properties;
+        this.metrics = metrics;
+        this.profiler = profiler;
+        this.resilience = resilience;
     }
 
-    public List<Map<String, Object>> fetchAllProjects(String token) {
+    /**
+     * List the member projects; when {@code activeAfter} is set, GitLab only returns projects with activity
+     * after it ({@code last_activity_after}).
+     */
+    public List<Map<String, Object>> fetchAllProjects(String token, OffsetDateTime activeAfter) {
         String endpoint = properties.getBaseUrl() + "/projects";
         List<Map<String, Object>> results = new ArrayList<>();
         int page = 1;
 
-        logger.info("Start fetching GitLab projects");
+        logger.info("Start fetching GitLab projects, activeAfter={}", activeAfter);
         while (true) {
-            URI uri = UriComponentsBuilder.fromHttpUrl(endpoint)
+            UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(endpoint)
                     .queryParam("membership", true)
+                    .queryParam("order_by", "last_activity_at")
                     .queryParam("per_page", 100)
-                    .queryParam("page", page)
-                    .build()
-                    .toUri();
+                    .queryParam("page", page);
+            if (activeAfter != null) {
+                builder.queryParam("last_activity_after", activeAfter.toInstant().toString());
+            }
+            URI uri = builder.build().toUri();
 
-            ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(
-                    uri, HttpMethod.GET, new HttpEntity<>(buildHeaders(token)), LIST_MAP_TYPE);
+            ResponseEntity<List<Map<String, Object>>> response = get(uri, "/projects", token, LIST_MAP_TYPE);
 
             List<Map<String, Object>> body = response.getBody();
             if (body == null || body.isEmpty()) {
                 break;
             }
             results.addAll(body);
+            metrics.recordPage(SyncMetrics.GITLAB, "/projects");
             logger.info("Fetched GitLab projects page {}, count={}", page, body.size());
             page += 1;
         }
@@ -62,18 +79,38 @@ public class GitlabApiClient {
         return results;
     }
 
+    /**
+     * Email the token's user commits with ({@code commit_email}, falling back to the primary email), used as
+     * the {@code author} filter of the commits endpoint.
+     */
+    public String fetchAuthorIdentity(String token) {
+        URI uri = UriComponentsBuilder.fromHttpUrl(properties.getBaseUrl() + "/user").build().toUri();
+        ResponseEntity<Map<String, Object>> response = get(uri, "/user", token, new ParameterizedTypeReference<>() {});
+        Map<String, Object> user = response.getBody() == null ? Map.of() : response.getBody();
+        for (String field : List.of("commit_email", "email", "public_email")) {
+            Object value = user.get(field);
+            if (value != null && !value.toString().isBlank()) {
+                return value.toString();
+            }
+        }
+        throw new IllegalStateException("GitLab user has no commit email");
+    }
+
     public Map<String, Double> fetchLanguages(long projectId, String token) {
         String endpoint = properties.getBaseUrl() + "/projects/" + projectId + "/languages";
         logger.info("Fetching GitLab project languages: {}", projectId);
-        ResponseEntity<Map<String, Double>> response = restTemplate.exchange(
-                endpoint, HttpMethod.GET, new HttpEntity<>(buildHeaders(token)),
+        URI uri = UriComponentsBuilder.fromHttpUrl(endpoint).build().toUri();
+        ResponseEntity<Map<String, Double>> response = get(uri, "/projects/{id}/languages", token,
                 new ParameterizedTypeReference<>() {});
         return response.getBody();
     }
 
-    public List<String> fetchBranches(long projectId, String token) {
+    /**
+     * List branches with their head commit SHA, in API order.
+     */
+    public Map<String, String> fetchBranches(long projectId, String token) {
         String endpoint = properties.getBaseUrl() + "/projects/" + projectId + "/repository/branches";
-        List<String> results = new ArrayList<>();
+        Map<String, String> results = new LinkedHashMap<>();
         int page = 1;
 
         logger.info("Start fetching GitLab branches: {}", projectId);
@@ -84,8 +121,8 @@ public class GitlabApiClient {
                     .build()
                     .toUri();
 
-            ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(
-                    uri, HttpMethod.GET, new HttpEntity<>(buildHeaders(token)), LIST_MAP_TYPE);
+            ResponseEntity<List<Map<String, Object>>> response =
+                    get(uri, "/projects/{id}/repository/branches", token, LIST_MAP_TYPE);
 
             List<Map<String, Object>> body = response.getBody();
             if (body == null || body.isEmpty()) {
@@ -94,9 +131,11 @@ public class GitlabApiClient {
             for (Map<String, Object> branch : body) {
                 Object name = branch.get("name");
                 if (name != null) {
-                    results.add(name.toString());
+                    Object head = branch.get("commit") instanceof Map<?, ?> commit ? commit.get("id") : null;
+                    results.put(name.toString(), head == null ? "" : head.toString());
                 }
             }
+            metrics.recordPage(SyncMetrics.GITLAB, "/projects/{id}/repository/branches");
             logger.info("Fetched GitLab branches page {}, count={}", page, body.size());
             page += 1;
         }
@@ -105,37 +144,80 @@ public class GitlabApiClient {
         return results;
     }
 
-    public List<Map<String, Object>> fetchCommits(long projectId, String branch, OffsetDateTime since,
-                                                  OffsetDateTime until, String token) {
+    /**
+     * Page through the commits of a branch starting at {@code startPage}, handing each non-empty page to
+     * {@code pageHandler} together with its page number before the next one is requested. {@code author}, when
+     * set, is filtered by GitLab.
+     */
+    public void fetchCommitPages(long projectId, String branch, String author, OffsetDateTime since,
+                                 OffsetDateTime until, int startPage, String token,
+                                 ObjIntConsumer<List<Map<String, Object>>> pageHandler) {
         String endpoint = properties.getBaseUrl() + "/projects/" + projectId + "/repository/commits";
-        List<Map<String, Object>> results = new ArrayList<>();
-        int page = 1;
+        int page = startPage;
+        long total = 0;
 
-        logger.info("Start fetching GitLab commits: {}, branch={}", projectId, branch);
+        logger.info("Start fetching GitLab commits: {}, branch={}, page={}", projectId, branch, startPage);
         while (true) {
-            URI uri = UriComponentsBuilder.fromHttpUrl(endpoint)
+            UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(endpoint)
                     .queryParam("since", since.toString())
                     .queryParam("until", until.toString())
                     .queryParam("ref_name", branch)
                     .queryParam("per_page", 100)
-                    .queryParam("page", page)
-                    .build()
-                    .toUri();
+                    .queryParam("page", page);
+            if (author != null) {
+                builder.queryParam("author", author);
+            }
+            URI uri = builder.build().toUri();
 
-            ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(
-                    uri, HttpMethod.GET, new HttpEntity<>(buildHeaders(token)), LIST_MAP_TYPE);
+            ResponseEntity<List<Map<String, Object>>> response =
+                    get(uri, "/projects/{id}/repository/commits", token, LIST_MAP_TYPE);
 
             List<Map<String, Object>> body = response.getBody();
             if (body == null || body.isEmpty()) {
                 break;
             }
-            results.addAll(body);
+            total += body.size();
+            metrics.recordPage(SyncMetrics.GITLAB, "/projects/{id}/repository/commits");
             logger.info("Fetched GitLab commits page {}, count={}", page, body.size());
+            pageHandler.accept(body, page);
             page += 1;
         }
 
-        logger.info("Finished fetching GitLab commits: {}, branch={}, total={}", projectId, branch, results.size());
-        return results;
+        logger.info("Finished fetching GitLab commits: {}, branch={}, total={}", projectId, branch, total);
+    }
+
+    private <T> ResponseEntity<T> get(URI uri, String endpointTemplate, String token,
+                                      ParameterizedTypeReference<T> responseType) {
+        return resilience.execute(SyncMetrics.GITLAB, endpointTemplate, uri, token,
+                () -> attempt(uri, endpointTemplate, token, responseType));
+    }
+
+    private <T> ResponseEntity<T> attempt(URI uri, String endpointTemplate, String token,
+                                          ParameterizedTypeReference<T> responseType) {
+        long startNanos = System.nanoTime();
+        String status = "IO_ERROR";
+        profiler.recordApiRequest();
+        try {
+            ResponseEntity<T> response = restTemplate.exchange(
+                    uri, HttpMethod.GET, new HttpEntity<>(buildHeaders(token)), responseType);
+            status = String.valueOf(response.getStatusCode().value());
+            trackRateLimit(response.getHeaders());
+            return response;
+        } catch (RestClientResponseException e) {
+            status = String.valueOf(e.getStatusCode().value());
+            trackRateLimit(e.getResponseHeaders());
+            throw e;
+        } finally {
+            metrics.recordApiCall(SyncMetrics.GITLAB, endpointTemplate, status, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void trackRateLimit(HttpHeaders headers) {
+        if (headers == null) {
+            return;
+        }
+        String remaining = headers.getFirst("RateLimit-Remaining");
+        metrics.updateRateLimit(SyncMetrics.GITLAB, remaining);
     }
 
     private HttpHeaders buildHeaders(String token) {
@@ -1,39 +1,98 @@
 package com.example.gitlabcommitlog.service;
 
+import com.example.gitlabcommitlog.config.SyncProperties;
 import com.example.gitlabcommitlog.model.GitlabCommitDaily;
 import com.example.gitlabcommitlog.model.GitlabCommitRecord;
 import com.example.gitlabcommitlog.model.GitlabProjectInfo;
+import com.example.gitlabcommitlog.model.ProjectCatalog;
+import com.example.gitlabcommitlog.model.SharedCommit;
+import com.example.gitlabcommitlog.model.SyncState;
+import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Service
 public class GitlabDataSyncService {
     private static final Logger logger = LoggerFactory.getLogger(GitlabDataSyncService.class);
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final int REUSE_BATCH_SIZE = 500;
+    /**
+     * Listing fields a work item carries to whichever instance processes the project.
+     */
+    private static final List<String> PROJECT_FIELDS =
+            List.of("id", "path_with_namespace", "name", "visibility", "default_branch");
+    /**
+     * Fields of a membership row the commit listing projects; never the token, which its id contains too.
+     */
+    private static final List<String> LISTED_FIELDS = List.of("sha", "repository", "branch", "committedAt", "author",
+            "url");
 
     private final GitlabApiClient client;
     private final MongoTemplate mongoTemplate;
-
-    public GitlabDataSyncService(GitlabApiClient client, MongoTemplate mongoTemplate) {
+    private final SyncMetrics metrics;
+    private final SyncProfiler profiler;
+    private final SyncVersionTracker syncVersions;
+    private final SharedCommitStore sharedCommits;
+    private final CommitRollupStore rollups;
+    private final HeatmapStore heatmaps;
+    private final CommitDayCountStore dayCounts;
+    private final ActivityAnalytics analytics;
+    private final ProjectCatalogStore catalog;
+    private final SyncOrchestrator orchestrator;
+    private final SyncProperties syncProperties;
+    private final Provider provider = new Provider();
+
+    public GitlabDataSyncService(GitlabApiClient client, MongoTemplate mongoTemplate, SyncMetrics metrics,
+                                 SyncProfiler profiler, SyncVersionTracker syncVersions,
+                                 SharedCommitStore sharedCommits, CommitRollupStore rollups, HeatmapStore heatmaps,
+                                 CommitDayCountStore dayCounts, ActivityAnalytics analytics,
+                                 ProjectCatalogStore catalog, SyncOrchestrator orchestrator,
+                                 SyncProperties syncProperties) {
         this.client = client;
         this.mongoTemplate = mongoTemplate;
+        this.metrics = metrics;
+        this.profiler = profiler;
+        this.syncVersions = syncVersions;
+        this.sharedCommits = sharedCommits;
+        this.rollups = rollups;
+        this.heatmaps = heatmaps;
+        this.dayCounts = dayCounts;
+        this.analytics = analytics;
+        this.catalog = catalog;
+        this.orchestrator = orchestrator;
+        this.syncProperties = syncProperties;
+    }
+
+    /**
+     * Help with syncs coordinated by other instances once the application is up.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startWorker() {
+        orchestrator.startWorker(provider);
     }
 
     public Map<LocalDate, Integer> syncLastYear(String token) {
@@ -43,93 +102,267 @@ public class GitlabDataSyncService {
     }
 
     public Map<LocalDate, Integer> syncRange(LocalDate start, LocalDate end, String token) {
-        if (token == null || token.isBlank()) {
-            return Map.of();
-        }
-        String maskedToken = maskToken(token);
-        OffsetDateTime since = start.atStartOfDay(ZoneId.systemDefault()).toOffsetDateTime();
-        OffsetDateTime until = end.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toOffsetDateTime();
+        return syncRange(start, end, token, orchestrator.interactiveWeight());
+    }
 
-        Map<LocalDate, Integer> dailyCounts = new HashMap<>();
+    /**
+     * Sync [start, end], fetching with {@code weight} as the token's share of the fetch workers; see
+     * {@link SyncOrchestrator#syncRange}.
+     */
+    public Map<LocalDate, Integer> syncRange(LocalDate start, LocalDate end, String token, int weight) {
+        return orchestrator.syncRange(provider, start, end, token, weight, null).getDailyCounts();
+    }
 
-        logger.info("Start syncing GitLab commits, token={}, range={} ~ {}", maskedToken, start, end);
-        List<Map<String, Object>> projects = client.fetchAllProjects(token);
-        logger.info("GitLab projects to process: {}", projects.size());
-        for (Map<String, Object> project : projects) {
-            Long projectId = ((Number) project.get("id")).longValue();
-            String fullName = (String) project.get("path_with_namespace");
-            String projectName = fullName != null ? fullName : (String) project.get("name");
-            String visibility = project.get("visibility") == null ? "private" : project.get("visibility").toString();
+    private void syncBranchPages(SyncOrchestrator.ProjectRun run, Collection<String> branches) {
+        for (String branch : branches) {
+            orchestrator.syncPages(run, branch, (startPage, pageHandler) -> client.fetchCommitPages(run.projectId(),
+                    branch, run.authorId(), run.since(), run.until(), startPage, run.token(), pageHandler),
+                    commits -> ingestCommits(run, branch, commits));
+        }
+    }
 
-            if (projectName == null || projectName.isBlank()) {
+    private void ingestCommits(SyncOrchestrator.ProjectRun run, String branch, List<Map<String, Object>> commits) {
+        long deduplicated = 0;
+        long ingested = 0;
+        List<SharedCommit> shared = new ArrayList<>();
+        List<GitlabCommitRecord> records = new ArrayList<>();
+        for (Map<String, Object> commit : commits) {
+            Object shaObj = commit.get("id");
+            if (shaObj == null) {
+                metrics.recordCommits(SyncMetrics.GITLAB, "skipped", 1);
                 continue;
             }
+            String sha = shaObj.toString();
+            if (!run.seenShas().add(sha)) {
+                metrics.recordCommits(SyncMetrics.GITLAB, "deduplicated", 1);
+                deduplicated++;
+                continue;
+            }
+            String committedDate = extractCommitDate(commit);
+            if (committedDate == null) {
+                metrics.recordCommits(SyncMetrics.GITLAB, "skipped", 1);
+                continue;
+            }
+            OffsetDateTime committed = OffsetDateTime.parse(committedDate);
+            LocalDate date = committed.toLocalDate();
+            if (date.isBefore(run.start()) || date.isAfter(run.end())) {
+                metrics.recordCommits(SyncMetrics.GITLAB, "skipped", 1);
+                continue;
+            }
+            SharedCommit sharedCommit = buildSharedCommit(run.repository(), branch, sha, commit, committedDate,
+                    committed);
+            shared.add(sharedCommit);
+            records.add(toCommitRecord(sharedCommit, run.token(), branch));
+            ingested++;
+            run.counts().merge(date, 1, Integer::sum);
+        }
+        metrics.timePhase(SyncMetrics.GITLAB, "persist", () -> profiler.timeMongo(() -> {
+            sharedCommits.storeAll(shared);
+            saveCommitRecords(records);
+        }));
+        metrics.recordCommits(SyncMetrics.GITLAB, "ingested", ingested);
+        profiler.recordCommits(run.profile(), commits.size(), deduplicated, ingested);
+    }
 
-            Map<String, Double> languages = client.fetchLanguages(projectId, token);
-            String topLanguage = resolveTopLanguage(languages);
-            String projectKey = token + ":" + projectId;
-            mongoTemplate.save(new GitlabProjectInfo(projectKey, token, projectName, visibility, topLanguage));
-
-            List<String> branches = client.fetchBranches(projectId, token);
-            Set<String> seenShas = new HashSet<>();
-            for (String branch : branches) {
-                List<Map<String, Object>> commits = client.fetchCommits(projectId, branch, since, until, token);
-                for (Map<String, Object> commit : commits) {
-                    Object shaObj = commit.get("id");
-                    if (shaObj == null) {
-                        continue;
-                    }
-                    String sha = shaObj.toString();
-                    if (!seenShas.add(sha)) {
-                        continue;
-                    }
-                    String committedDate = extractCommitDate(commit);
-                    if (committedDate == null) {
-                        continue;
-                    }
-                    LocalDate date = OffsetDateTime.parse(committedDate).toLocalDate();
-                    if (date.isBefore(start) || date.isAfter(end)) {
-                        continue;
-                    }
-                    GitlabCommitRecord record = buildCommitRecord(projectName, branch, commit, committedDate, token);
-                    if (record != null) {
-                        mongoTemplate.save(record);
-                    }
-                    dailyCounts.merge(date, 1, Integer::sum);
-                }
+    /**
+     * Upsert membership rows by id in one unordered bulk write.
+     */
+    private void saveCommitRecords(List<GitlabCommitRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, GitlabCommitRecord.class);
+        for (GitlabCommitRecord record : records) {
+            bulk.replaceOne(new Query(Criteria.where("_id").is(record.getId())), record,
+                    FindAndReplaceOptions.options().upsert());
+        }
+        bulk.execute();
+    }
+
+    private Map<String, GitlabProjectInfo> loadProjectInfos(String token) {
+        Map<String, GitlabProjectInfo> projects = new HashMap<>();
+        Query query = new Query(Criteria.where("token").is(token));
+        for (GitlabProjectInfo info : mongoTemplate.find(query, GitlabProjectInfo.class)) {
+            projects.put(info.getId(), info);
+        }
+        return projects;
+    }
+
+    /**
+     * Languages are only fetched when the stored metadata is older than {@code sync.metadata-ttl}; name and
+     * visibility come with the project listing and are written back only when they changed.
+     */
+    private void refreshProjectInfo(SyncOrchestrator.ProjectRun run, GitlabProjectInfo known) {
+        String projectName = run.repository();
+        Object listedVisibility = run.project().get("visibility");
+        String visibility = listedVisibility == null ? "private" : listedVisibility.toString();
+        Duration ttl = syncProperties.getMetadataTtl();
+        Instant now = Instant.now();
+        if (known != null && known.getMetadataFetchedAt() != null
+                && known.getMetadataFetchedAt().plus(ttl).isAfter(now)) {
+            metrics.recordMetadata(SyncMetrics.GITLAB, "cached");
+            if (!projectName.equals(known.getName()) || !visibility.equals(known.getVisibility())) {
+                known.setName(projectName);
+                known.setVisibility(visibility);
+                profiler.timeMongo(() -> mongoTemplate.save(known));
             }
-            logger.info("Finished GitLab project: {}, branches={}, unique commits={}",
-                    projectName, branches.size(), seenShas.size());
+            return;
         }
+        Map<String, Double> languages = metrics.timePhase(SyncMetrics.GITLAB, "languages",
+                () -> client.fetchLanguages(run.projectId(), run.token()));
+        GitlabProjectInfo info = new GitlabProjectInfo(run.token() + ":" + run.projectId(), run.token(), projectName,
+                visibility, resolveTopLanguage(languages));
+        info.setMetadataFetchedAt(now);
+        metrics.recordMetadata(SyncMetrics.GITLAB, "fetched");
+        profiler.timeMongo(() -> mongoTemplate.save(info));
+    }
 
-        upsertDailyCounts(start, end, dailyCounts, token);
-        logger.info("GitLab sync finished, token={}, total days={}", maskedToken, dailyCounts.size());
-        return dailyCounts;
+    /**
+     * Record the token's rows for commits another token already stored under the same branch heads. Each row
+     * counts towards the first of the token's own branches the commit was listed under.
+     */
+    private long reuseSharedCommits(SyncOrchestrator.ProjectRun run, Collection<String> branchOrder) {
+        String authorId = run.authorId();
+        long reused = 0;
+        List<GitlabCommitRecord> batch = new ArrayList<>();
+        try (Stream<SharedCommit> commits =
+                     sharedCommits.streamRepository(SyncMetrics.GITLAB, run.repository(), run.start(), run.end())) {
+            for (SharedCommit shared : (Iterable<SharedCommit>) commits::iterator) {
+                if (authorId != null && !authorId.equalsIgnoreCase(shared.getAuthorId())) {
+                    continue;
+                }
+                batch.add(toCommitRecord(shared, run.token(), SharedCommitStore.attributeBranch(shared, branchOrder)));
+                if (batch.size() >= REUSE_BATCH_SIZE) {
+                    List<GitlabCommitRecord> full = List.copyOf(batch);
+                    profiler.timeMongo(() -> saveCommitRecords(full));
+                    batch.clear();
+                }
+                run.counts().merge(SharedCommitStore.fromDayKey(shared.getCommittedDay()), 1, Integer::sum);
+                reused++;
+            }
+        }
+        profiler.timeMongo(() -> saveCommitRecords(batch));
+        metrics.recordCommits(SyncMetrics.GITLAB, "reused", reused);
+        profiler.recordCommits(run.profile(), reused, 0, reused);
+        return reused;
     }
 
-    public boolean hasTokenData(String token) {
+    /**
+     * Sync state of the token, or {@code null} if it was never synced.
+     */
+    public SyncState getSyncState(String token) {
         if (token == null || token.isBlank()) {
-            return false;
+            return null;
         }
-        Query query = new Query(Criteria.where("token").is(token));
-        boolean exists = mongoTemplate.count(query, GitlabCommitRecord.class) > 0;
-        logger.info("Check GitLab cached data, token={}, exists={}", maskToken(token), exists);
-        return exists;
+        return orchestrator.syncState(provider, token);
+    }
+
+    /**
+     * Refresh the token's data in the background once it is stale; see {@link SyncOrchestrator#refreshIfStale}.
+     */
+    public boolean refreshIfStale(String token, SyncState state) {
+        return orchestrator.refreshIfStale(provider, token, state);
     }
 
+    /**
+     * Daily counts of [start, end], served from the {@link HeatmapStore}.
+     */
     public List<GitlabCommitDaily> getDailyCounts(LocalDate start, LocalDate end, String token) {
         if (token == null || token.isBlank()) {
             return List.of();
         }
-        Query query = new Query(Criteria.where("date").gte(start.format(DATE_FORMATTER))
-                .lte(end.format(DATE_FORMATTER))
-                .and("token").is(token));
-        List<GitlabCommitDaily> existing = mongoTemplate.find(query, GitlabCommitDaily.class);
+        int[] counts = heatmaps.counts(SyncMetrics.GITLAB, GitlabCommitDaily.class, token,
+                syncVersions.currentVersion(SyncMetrics.GITLAB, token), start, end);
+        List<GitlabCommitDaily> results = new ArrayList<>(counts.length);
+        LocalDate day = start;
+        for (int count : counts) {
+            results.add(new GitlabCommitDaily(day.format(DATE_FORMATTER), count, token));
+            day = day.plusDays(1);
+        }
+        return results;
+    }
+
+    /**
+     * Daily counts of one repository, branch or author, or any combination of them, summed from
+     * {@link CommitDayCountStore}. Blank filters match all commits.
+     */
+    public List<GitlabCommitDaily> getFilteredDailyCounts(LocalDate start, LocalDate end, String project, String branch,
+                                                          String author, String token) {
+        if (token == null || token.isBlank()) {
+            return List.of();
+        }
+        Map<String, Integer> countMap = dayCounts.dailyCounts(SyncMetrics.GITLAB, GitlabCommitRecord.class, token,
+                start, end, project, branch, author);
+        return fillDays(start, end, countMap, token);
+    }
+
+    /**
+     * Daily counts bucketed by the calendar of {@code zone} instead of each committer's own offset, grouped
+     * from the commit rows by their native commit time so no re-sync is needed. Blank filters match all commits.
+     */
+    public List<GitlabCommitDaily> getDailyCountsInZone(LocalDate start, LocalDate end, ZoneId zone, String project,
+                                                        String branch, String author, String token) {
+        if (token == null || token.isBlank()) {
+            return List.of();
+        }
+        Criteria criteria = Criteria.where("token").is(token)
+                .and("committedTime").gte(start.atStartOfDay(zone).toInstant())
+                .lt(end.plusDays(1).atStartOfDay(zone).toInstant());
+        if (project != null && !project.isBlank()) {
+            criteria.and("repository").is(project);
+        }
+        if (branch != null && !branch.isBlank()) {
+            criteria.and("branch").is(branch);
+        }
+        if (author != null && !author.isBlank()) {
+            criteria.and("author").is(author);
+        }
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.project().and(DateOperators.zonedDateOf("committedTime",
+                        DateOperators.Timezone.valueOf(zone.getId())).toString("%Y-%m-%d")).as("date"),
+                Aggregation.group("date").count().as("count"));
         Map<String, Integer> countMap = new HashMap<>();
-        for (GitlabCommitDaily daily : existing) {
-            countMap.put(daily.getDate(), daily.getCount());
+        for (Document bucket : mongoTemplate.aggregate(aggregation, GitlabCommitRecord.class, Document.class)) {
+            countMap.put(bucket.getString("_id"), ((Number) bucket.get("count")).intValue());
+        }
+        return fillDays(start, end, countMap, token);
+    }
+
+    /**
+     * Counts of an arbitrary range, from daily counts or week, month and year rollups; see
+     * {@link CommitRollupStore#heatmap}.
+     */
+    public Map<String, Object> getHeatmapRange(LocalDate from, LocalDate to, CommitRollupStore.Granularity granularity,
+                                               String token) {
+        if (token == null || token.isBlank()) {
+            return Map.of("buckets", List.of());
         }
+        Map<String, Object> response = rollups.heatmap(SyncMetrics.GITLAB, GitlabCommitDaily.class, token, from, to,
+                granularity);
+        logger.info("GitLab heatmap range fetched, token={}, range={} ~ {}, granularity={}", maskToken(token), from, to,
+                response.get("granularity"));
+        return response;
+    }
+
+    /**
+     * The most active repositories, authors, branches, weekdays or hours over [from, to]; see
+     * {@link ActivityAnalytics}.
+     */
+    public Map<String, Object> getActivity(CommitDayCountStore.Dimension dimension, LocalDate from, LocalDate to,
+                                           int limit, String token) {
+        if (token == null || token.isBlank()) {
+            return Map.of("items", List.of());
+        }
+        Map<String, Object> response = analytics.top(SyncMetrics.GITLAB, GitlabCommitRecord.class, token, from, to,
+                dimension, limit);
+        logger.info("Activity fetched, token={}, dimension={}, range={} ~ {}, limit={}", maskToken(token),
+                dimension.key(), from, to, limit);
+        return response;
+    }
 
+    private List<GitlabCommitDaily> fillDays(LocalDate start, LocalDate end, Map<String, Integer> countMap,
+                                             String token) {
         List<GitlabCommitDaily> results = new ArrayList<>();
         LocalDate cursor = start;
         while (!cursor.isAfter(end)) {
@@ -162,10 +395,14 @@ public class GitlabDataSyncService {
         }
 
         long total = mongoTemplate.count(query, GitlabCommitRecord.class);
-        query.skip((long) (safePage - 1) * safeSize);
-        query.limit(safeSize);
-        query.with(org.springframework.data.domain.Sort.by(org.springframework.data.domain.Sort.Direction.DESC, "committedAt"));
-        List<GitlabCommitRecord> records = mongoTemplate.find(query, GitlabCommitRecord.class);
+        Aggregation listing = Aggregation.newAggregation(
+                Aggregation.match(new Criteria().andOperator(criteria.toArray(new Criteria[0]))),
+                Aggregation.sort(org.springframework.data.domain.Sort.Direction.DESC, "committedTime"),
+                Aggregation.skip((long) (safePage - 1) * safeSize),
+                Aggregation.limit(safeSize),
+                SharedCommitStore.previewProjection(LISTED_FIELDS));
+        List<Document> records = mongoTemplate.aggregate(listing, GitlabCommitRecord.class, Document.class)
+                .getMappedResults();
 
         Map<String, Object> response = new HashMap<>();
         response.put("total", total);
@@ -177,15 +414,78 @@ public class GitlabDataSyncService {
         return response;
     }
 
+    /**
+     * Commits whose message matches {@code text}, best match first; see {@link SharedCommitStore#searchMessages}
+     * for the query syntax. Project and branch filter like {@link #queryCommitRecords}.
+     */
+    public Map<String, Object> searchCommitRecords(String text, String project, String branch, int page, int size,
+                                                   String token) {
+        int safePage = Math.max(page, 1);
+        int safeSize = Math.max(size, 1);
+        if (token == null || token.isBlank() || text == null || text.isBlank()) {
+            return Map.of("total", 0, "page", safePage, "size", safeSize, "records", List.of());
+        }
+        Pattern projectPattern = project != null && !project.isBlank() ? buildContainsRegex(project) : null;
+        Pattern branchPattern = branch != null && !branch.isBlank() ? buildContainsRegex(branch) : null;
+        long total = sharedCommits.countMessages(GitlabCommitRecord.class, token, text, projectPattern, branchPattern);
+        List<Document> records = sharedCommits.searchMessages(GitlabCommitRecord.class, token, text, projectPattern,
+                branchPattern, (long) (safePage - 1) * safeSize, safeSize);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("total", total);
+        response.put("page", safePage);
+        response.put("size", safeSize);
+        response.put("records", records);
+        logger.info("GitLab Commit message search finished, token={}, project={}, branch={}, total={}",
+                maskToken(token), project, branch, total);
+        return response;
+    }
+
+    /**
+     * One commit of the token with its full message, or {@code null} if the token has no such commit.
+     */
+    public Map<String, Object> getCommitDetails(String repository, String sha, String token) {
+        if (token == null || token.isBlank() || repository == null || repository.isBlank() || sha == null
+                || sha.isBlank()) {
+            return null;
+        }
+        GitlabCommitRecord record = mongoTemplate.findById(token + ":" + repository + ":" + sha,
+                GitlabCommitRecord.class);
+        if (record == null) {
+            return null;
+        }
+        String message = record.getMessage();
+        String url = record.getUrl();
+        if (message == null && record.getCommitKey() != null) {
+            SharedCommit commit = sharedCommits.findByKeys(List.of(record.getCommitKey())).get(record.getCommitKey());
+            if (commit != null) {
+                message = commit.getMessage();
+                url = commit.getUrl();
+            }
+        }
+        Map<String, Object> details = new HashMap<>();
+        details.put("sha", record.getSha());
+        details.put("repository", record.getRepository());
+        details.put("branch", record.getBranch());
+        details.put("committedAt", record.getCommittedAt());
+        details.put("author", record.getAuthor());
+        details.put("message", message);
+        details.put("url", url);
+        logger.info("GitLab commit details fetched, token={}, repository={}, sha={}", maskToken(token), repository,
+                sha);
+        return details;
+    }
+
     public List<String> getAllProjects(String token) {
         if (token == null || token.isBlank()) {
             return List.of();
         }
-        List<String> projects = mongoTemplate.query(GitlabCommitRecord.class)
-                .distinct("repository")
-                .matching(new Query(Criteria.where("token").is(token)))
-                .as(String.class)
-                .all();
+        List<String> projects = new ArrayList<>();
+        for (ProjectCatalog project : catalog.projects(SyncMetrics.GITLAB, GitlabCommitRecord.class, token)) {
+            if (project.getCommitCount() > 0) {
+                projects.add(project.getRepository());
+            }
+        }
         projects.sort(String::compareToIgnoreCase);
         logger.info("GitLab project list fetched, token={}, count={}", maskToken(token), projects.size());
         return projects;
@@ -195,32 +495,30 @@ public class GitlabDataSyncService {
         if (project == null || project.isBlank() || token == null || token.isBlank()) {
             return List.of();
         }
-        Query query = new Query(Criteria.where("repository").is(project).and("token").is(token));
-        List<String> branches = mongoTemplate.query(GitlabCommitRecord.class)
-                .distinct("branch")
-                .matching(query)
-                .as(String.class)
-                .all();
-        branches.sort(String::compareToIgnoreCase);
+        ProjectCatalog entry = catalog.project(SyncMetrics.GITLAB, GitlabCommitRecord.class, token, project);
+        List<String> branches = new ArrayList<>();
+        if (entry != null) {
+            for (ProjectCatalog.Branch branch : entry.getBranches()) {
+                if (branch.getCommitCount() > 0) {
+                    branches.add(branch.getName());
+                }
+            }
+        }
         logger.info("GitLab branch list fetched, token={}, project={}, count={}",
                 maskToken(token), project, branches.size());
         return branches;
     }
 
-    private void upsertDailyCounts(LocalDate start, LocalDate end, Map<LocalDate, Integer> dailyCounts, String token) {
-        Query deleteQuery = new Query(Criteria.where("date")
-                .gte(start.format(DATE_FORMATTER))
-                .lte(end.format(DATE_FORMATTER))
-                .and("token").is(token));
-        mongoTemplate.remove(deleteQuery, GitlabCommitDaily.class);
-
-        List<GitlabCommitDaily> docs = dailyCounts.entrySet().stream()
-                .sorted(Comparator.comparing(Map.Entry::getKey))
-                .map(entry -> new GitlabCommitDaily(entry.getKey().format(DATE_FORMATTER), entry.getValue(), token))
-                .toList();
-        if (!docs.isEmpty()) {
-            mongoTemplate.insertAll(docs);
+    /**
+     * Every repository of the token with its branches, heads, commit counts and last activity.
+     */
+    public List<ProjectCatalog> getCatalog(String token) {
+        if (token == null || token.isBlank()) {
+            return List.of();
         }
+        List<ProjectCatalog> projects = catalog.projects(SyncMetrics.GITLAB, GitlabCommitRecord.class, token);
+        logger.info("GitLab project catalog fetched, token={}, count={}", maskToken(token), projects.size());
+        return projects;
     }
 
     private String resolveTopLanguage(Map<String, ? extends Number> languages) {
@@ -242,18 +540,32 @@ public class GitlabDataSyncService {
         return authored == null ? null : authored.toString();
     }
 
-    private GitlabCommitRecord buildCommitRecord(String repository, String branch, Map<String, Object> commit,
-                                                 String committedDate, String token) {
-        Object shaObj = commit.get("id");
-        if (shaObj == null) {
-            return null;
-        }
-        String sha = shaObj.toString();
-        String id = token + ":" + repository + ":" + sha;
+    private SharedCommit buildSharedCommit(String repository, String branch, String sha, Map<String, Object> commit,
+                                           String committedDate, OffsetDateTime committed) {
+        String id = SharedCommitStore.commitKey(SyncMetrics.GITLAB, repository, sha);
         String message = extractCommitMessage(commit);
         String author = extractCommitAuthor(commit);
         String url = extractCommitUrl(commit);
-        return new GitlabCommitRecord(id, token, sha, repository, branch, committedDate, author, message, url);
+        List<String> branches = branch == null ? List.of() : List.of(branch);
+        SharedCommit shared = new SharedCommit(id, SyncMetrics.GITLAB, repository, sha, branches, committedDate,
+                author, extractAuthorId(commit), message, url);
+        shared.setCommittedTime(committed.toInstant());
+        shared.setCommittedDay(SharedCommitStore.dayKey(committed.toLocalDate()));
+        return shared;
+    }
+
+    /**
+     * Per-token membership row pointing at the shared commit, with its message and URL copied in so listings,
+     * exports and the per-token text index read the row alone.
+     */
+    private GitlabCommitRecord toCommitRecord(SharedCommit shared, String token, String branch) {
+        String id = token + ":" + shared.getRepository() + ":" + shared.getSha();
+        GitlabCommitRecord record = new GitlabCommitRecord(id, token, shared.getSha(), shared.getRepository(),
+                branch, shared.getCommittedAt(), shared.getAuthor(), shared.getMessage(), shared.getUrl());
+        record.setCommitKey(shared.getId());
+        record.setCommittedTime(shared.getCommittedTime());
+        record.setCommittedDay(shared.getCommittedDay());
+        return record;
     }
 
     private String extractCommitMessage(Map<String, Object> commit) {
@@ -274,6 +586,11 @@ public class GitlabDataSyncService {
         return committer == null ? null : committer.toString();
     }
 
+    private String extractAuthorId(Map<String, Object> commit) {
+        Object email = commit.get("author_email");
+        return email == null ? null : email.toString();
+    }
+
     private String extractCommitUrl(Map<String, Object> commit) {
         Object url = commit.get("web_url");
         return url == null ? null : url.toString();
@@ -294,4 +611,81 @@ public class GitlabDataSyncService {
         }
         return token.substring(0, 4) + "****" + token.substring(length - 4);
     }
+
+    /**
+     * GitLab's steps of the runs driven by {@link SyncOrchestrator}.
+     */
+    private final class Provider implements SyncProvider<GitlabProjectInfo> {
+        @Override
+        public String name() {
+            return SyncMetrics.GITLAB;
+        }
+
+        @Override
+        public Class<?> recordType() {
+            return GitlabCommitRecord.class;
+        }
+
+        @Override
+        public Class<?> dailyType() {
+            return GitlabCommitDaily.class;
+        }
+
+        @Override
+        public String shaField() {
+            return "id";
+        }
+
+        @Override
+        public List<String> projectFields() {
+            return PROJECT_FIELDS;
+        }
+
+        @Override
+        public String projectName(Map<String, Object> project) {
+            Object name = project.get("path_with_namespace") != null
+                    ? project.get("path_with_namespace") : project.get("name");
+            return name == null ? null : name.toString();
+        }
+
+        @Override
+        public List<Map<String, Object>> fetchProjects(String token, OffsetDateTime activeSince) {
+            return client.fetchAllProjects(token, activeSince);
+        }
+
+        @Override
+        public String fetchAuthorIdentity(String token) {
+            return client.fetchAuthorIdentity(token);
+        }
+
+        @Override
+        public Map<String, GitlabProjectInfo> loadProjectInfos(String token) {
+            return GitlabDataSyncService.this.loadProjectInfos(token);
+        }
+
+        @Override
+        public GitlabProjectInfo findProjectInfo(String projectKey) {
+            return mongoTemplate.findById(projectKey, GitlabProjectInfo.class);
+        }
+
+        @Override
+        public void refreshProjectInfo(SyncOrchestrator.ProjectRun run, GitlabProjectInfo known) {
+            GitlabDataSyncService.this.refreshProjectInfo(run, known);
+        }
+
+        @Override
+        public Map<String, String> fetchBranches(SyncOrchestrator.ProjectRun run) {
+            return client.fetchBranches(run.projectId(), run.token());
+        }
+
+        @Override
+        public long reuseSharedCommits(SyncOrchestrator.ProjectRun run, Collection<String> branches) {
+            return GitlabDataSyncService.this.reuseSharedCommits(run, branches);
+        }
+
+        @Override
+        public void listCommits(SyncOrchestrator.ProjectRun run, Map<String, String> branchHeads) {
+            syncBranchPages(run, branchHeads.keySet());
+        }
+    }
 }
@@ -0,0 +1,309 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.config.HeatmapProperties;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Daily counts of each token as a dense {@code int[]} by epoch day, keyed by the token's hash and snapshotted to a
+ * memory-mapped file for restarts. Syncs of this instance update the counts in place and {@link #advance} them to
+ * the version they write; counts moved on by another instance are reloaded.
+ */
+@Component
+public class HeatmapStore implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(HeatmapStore.class);
+    private static final int SNAPSHOT_MAGIC = 0x484d5333;
+
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, TokenCounts> tokens = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicLong writes = new AtomicLong();
+    private final Path snapshotPath;
+    private final ScheduledExecutorService snapshots;
+
+    public HeatmapStore(MongoTemplate mongoTemplate, HeatmapProperties properties) {
+        this.mongoTemplate = mongoTemplate;
+        String path = properties.getSnapshotPath();
+        this.snapshotPath = path == null || path.isBlank() ? null : Path.of(path);
+        if (snapshotPath == null) {
+            this.snapshots = null;
+            return;
+        }
+        restore();
+        this.snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "heatmap-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMillis = Math.max(properties.getSnapshotInterval().toMillis(), 1000);
+        snapshots.scheduleWithFixedDelay(this::snapshotIfDirty, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int[] counts(String provider, Class<?> dailyType, String token, long version, LocalDate start,
+                        LocalDate end) {
+        String key = key(provider, token);
+        TokenCounts counts = tokens.get(key);
+        if (counts == null || counts.version < version) {
+            // Loaded outside the map's lock, so a slow load does not hold up the tokens sharing its bin.
+            long writesBefore = writes.get();
+            TokenCounts loaded = load(dailyType, token, version);
+            loaded.exact = writes.get() == writesBefore;
+            counts = tokens.merge(key, loaded, (held, fresh) -> held.version >= fresh.version ? held : fresh);
+        }
+        int[] result = new int[(int) (end.toEpochDay() - start.toEpochDay() + 1)];
+        counts.copy(start.toEpochDay(), result);
+        return result;
+    }
+
+    /**
+     * Apply counts just raised in Mongo with {@code $max}.
+     */
+    public void raise(String provider, String token, Map<LocalDate, Integer> counts) {
+        writes.incrementAndGet();
+        TokenCounts held = tokens.get(key(provider, token));
+        if (held == null) {
+            // Not loaded yet: the first read loads the stored counts, which already include these.
+            return;
+        }
+        held.raise(counts);
+        dirty.set(true);
+    }
+
+    /**
+     * Apply the counts of [start, end] just rewritten in Mongo.
+     */
+    public void replace(String provider, String token, LocalDate start, LocalDate end,
+                        Map<LocalDate, Integer> counts) {
+        writes.incrementAndGet();
+        TokenCounts held = tokens.get(key(provider, token));
+        if (held == null) {
+            return;
+        }
+        held.replace(start.toEpochDay(), end.toEpochDay(), counts);
+        dirty.set(true);
+    }
+
+    /**
+     * Take the held counts on to {@code version}, written by a sync whose changes were all applied in place. Counts
+     * that missed a version in between, or a write made while they were loading, are reloaded instead.
+     */
+    public void advance(String provider, String token, long version) {
+        TokenCounts held = tokens.get(key(provider, token));
+        if (held != null && held.advance(version)) {
+            dirty.set(true);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (snapshots == null) {
+            return;
+        }
+        snapshots.shutdownNow();
+        snapshotIfDirty();
+    }
+
+    private TokenCounts load(Class<?> dailyType, String token, long version) {
+        Query query = new Query(Criteria.where("token").is(token));
+        query.fields().include("date", "count");
+        TokenCounts counts = new TokenCounts();
+        counts.version = version;
+        for (Document daily : mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(dailyType))) {
+            int count = daily.getInteger("count", 0);
+            if (count > 0) {
+                counts.add(LocalDate.parse(daily.getString("date")).toEpochDay(), count);
+            }
+        }
+        dirty.set(true);
+        return counts;
+    }
+
+    private synchronized void snapshotIfDirty() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            writeSnapshot();
+        } catch (IOException | RuntimeException e) {
+            dirty.set(true);
+            logger.warn("Failed to write heatmap snapshot to {}", snapshotPath, e);
+        }
+    }
+
+    /**
+     * Layout: magic, entry count, then per token the UTF-8 key ({@code provider:hash}), its sync version, the epoch
+     * day of its first count and the counts.
+     */
+    private void writeSnapshot() throws IOException {
+        Map<byte[], TokenCounts> copies = new LinkedHashMap<>();
+        long size = 8;
+        for (Map.Entry<String, TokenCounts> entry : tokens.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            TokenCounts copy = entry.getValue().snapshot();
+            copies.put(key, copy);
+            size += 20L + key.length + 4L * copy.days.length;
+        }
+        Path parent = snapshotPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(copies.size());
+            copies.forEach((key, counts) -> {
+                buffer.putInt(key.length).put(key).putLong(counts.version).putInt(counts.firstDay)
+                        .putInt(counts.days.length);
+                buffer.asIntBuffer().put(counts.days);
+                buffer.position(buffer.position() + 4 * counts.days.length);
+            });
+            buffer.force();
+        }
+        Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("Heatmap snapshot written, tokens={}, bytes={}", copies.size(), size);
+    }
+
+    private void restore() {
+        if (!Files.isRegularFile(snapshotPath)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != SNAPSHOT_MAGIC) {
+                // Earlier snapshots were keyed by the raw token, which must not stay on disk.
+                Files.delete(snapshotPath);
+                logger.warn("Deleted heatmap snapshot {} with an unknown format", snapshotPath);
+                return;
+            }
+            int entries = buffer.getInt();
+            for (int i = 0; i < entries; i++) {
+                byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                TokenCounts counts = new TokenCounts();
+                // Writes made after the snapshot are not in it, so the first sync reloads rather than advances.
+                counts.exact = false;
+                counts.version = buffer.getLong();
+                counts.firstDay = buffer.getInt();
+                counts.days = new int[buffer.getInt()];
+                buffer.asIntBuffer().get(counts.days);
+                buffer.position(buffer.position() + 4 * counts.days.length);
+                tokens.put(new String(key, StandardCharsets.UTF_8), counts);
+            }
+            logger.info("Heatmap snapshot restored, tokens={}", entries);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException
+                 | NegativeArraySizeException e) {
+            tokens.clear();
+            logger.warn("Ignoring unreadable heatmap snapshot {}", snapshotPath, e);
+        }
+    }
+
+    private String key(String provider, String token) {
+        return provider + ":" + SyncProfiler.tokenHash(token);
+    }
+
+    /**
+     * Counts from {@code firstDay}, always the first of January, through the end of a year.
+     */
+    private static final class TokenCounts {
+        private volatile long version;
+        /**
+         * Whether every in-place write since the counts were loaded was applied to them.
+         */
+        private boolean exact = true;
+        private int firstDay;
+        private int[] days = new int[0];
+
+        synchronized void copy(long start, int[] target) {
+            for (int i = 0; i < target.length; i++) {
+                long index = start + i - firstDay;
+                target[i] = index >= 0 && index < days.length ? days[(int) index] : 0;
+            }
+        }
+
+        synchronized void add(long day, int count) {
+            cover(day, day);
+            days[(int) (day - firstDay)] += count;
+        }
+
+        synchronized void raise(Map<LocalDate, Integer> counts) {
+            counts.forEach((date, count) -> {
+                long day = date.toEpochDay();
+                cover(day, day);
+                int index = (int) (day - firstDay);
+                days[index] = Math.max(days[index], count);
+            });
+        }
+
+        synchronized void replace(long start, long end, Map<LocalDate, Integer> counts) {
+            cover(start, end);
+            Arrays.fill(days, (int) (start - firstDay), (int) (end - firstDay) + 1, 0);
+            counts.forEach((date, count) -> {
+                long day = date.toEpochDay();
+                if (day >= start && day <= end) {
+                    days[(int) (day - firstDay)] = count;
+                }
+            });
+        }
+
+        synchronized boolean advance(long next) {
+            if (!exact || version != next - 1) {
+                return false;
+            }
+            version = next;
+            return true;
+        }
+
+        synchronized TokenCounts snapshot() {
+            TokenCounts copy = new TokenCounts();
+            copy.version = version;
+            copy.firstDay = firstDay;
+            copy.days = days.clone();
+            return copy;
+        }
+
+        private void cover(long start, long end) {
+            long lastDay = (long) firstDay + days.length - 1;
+            if (days.length > 0 && start >= firstDay && end <= lastDay) {
+                return;
+            }
+            long from = LocalDate.ofEpochDay(start).withDayOfYear(1).toEpochDay();
+            long to = LocalDate.ofEpochDay(end).plusYears(1).withDayOfYear(1).toEpochDay() - 1;
+            if (days.length > 0) {
+                from = Math.min(from, firstDay);
+                to = Math.max(to, lastDay);
+            }
+            int[] grown = new int[(int) (to - from + 1)];
+            if (days.length > 0) {
+                System.arraycopy(days, 0, grown, (int) (firstDay - from), days.length);
+            }
+            firstDay = (int) from;
+            days = grown;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.CommitDayCount;
+import com.example.gitlabcommitlog.model.ProjectCatalog;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The repositories and branches each token has synced, one document per repository.
+ */
+@Component
+public class ProjectCatalogStore {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final Comparator<ProjectCatalog.Branch> BRANCH_ORDER =
+            Comparator.comparing(ProjectCatalog.Branch::getName, String.CASE_INSENSITIVE_ORDER);
+
+    private final MongoTemplate mongoTemplate;
+    private final CommitDayCountStore dayCounts;
+
+    public ProjectCatalogStore(MongoTemplate mongoTemplate, CommitDayCountStore dayCounts) {
+        this.mongoTemplate = mongoTemplate;
+        this.dayCounts = dayCounts;
+    }
+
+    /**
+     * Replace the repository's branches with the ones just listed, keeping the counts of those that remain.
+     */
+    public void recordHeads(String provider, String token, String repository, Map<String, String> branchHeads) {
+        String id = catalogId(provider, token, repository);
+        ProjectCatalog catalog = mongoTemplate.findById(id, ProjectCatalog.class);
+        if (catalog == null) {
+            catalog = new ProjectCatalog(id, provider, SyncProfiler.tokenHash(token), repository);
+        }
+        Map<String, ProjectCatalog.Branch> known = new HashMap<>();
+        for (ProjectCatalog.Branch branch : catalog.getBranches()) {
+            known.put(branch.getName(), branch);
+        }
+        List<ProjectCatalog.Branch> branches = new ArrayList<>();
+        branchHeads.forEach((name, head) -> {
+            ProjectCatalog.Branch branch = known.getOrDefault(name, new ProjectCatalog.Branch(name, head));
+            branch.setHead(head);
+            branches.add(branch);
+        });
+        branches.sort(BRANCH_ORDER);
+        catalog.setBranches(branches);
+        catalog.setHeadsUpdatedAt(Instant.now());
+        mongoTemplate.save(catalog);
+    }
+
+    /**
+     * Recount every repository and branch of the token. Branches that no longer exist but still have commits
+     * attributed to them are kept without a head.
+     */
+    public void refreshCounts(String provider, Class<?> recordType, String token) {
+        dayCounts.ensureIndexed(provider, recordType, token);
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("provider").is(provider)
+                        .and("tokenHash").is(SyncProfiler.tokenHash(token))),
+                Aggregation.group("repository", "branch").sum("count").as("count").max("day").as("lastDay"));
+        Map<String, Map<String, ProjectCatalog.Branch>> totals = new LinkedHashMap<>();
+        for (Document group : mongoTemplate.aggregate(aggregation, CommitDayCount.class, Document.class)) {
+            Document key = group.get("_id", Document.class);
+            String repository = key.getString("repository");
+            if (repository == null) {
+                continue;
+            }
+            ProjectCatalog.Branch branch = new ProjectCatalog.Branch(key.getString("branch"), null);
+            branch.setCommitCount(((Number) group.get("count")).longValue());
+            branch.setLastActivity(SharedCommitStore.fromDayKey(group.getInteger("lastDay")).format(DATE_FORMATTER));
+            totals.computeIfAbsent(repository, ignored -> new LinkedHashMap<>()).put(branch.getName(), branch);
+        }
+
+        Map<String, ProjectCatalog> catalogs = new LinkedHashMap<>();
+        for (ProjectCatalog catalog : mongoTemplate.find(tokenQuery(provider, token), ProjectCatalog.class)) {
+            catalogs.put(catalog.getRepository(), catalog);
+        }
+        totals.keySet().forEach(repository -> catalogs.computeIfAbsent(repository,
+                ignored -> new ProjectCatalog(catalogId(provider, token, repository), provider,
+                        SyncProfiler.tokenHash(token), repository)));
+        if (catalogs.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProjectCatalog.class);
+        for (ProjectCatalog catalog : catalogs.values()) {
+            Map<String, ProjectCatalog.Branch> counted = totals.getOrDefault(catalog.getRepository(), Map.of());
+            List<ProjectCatalog.Branch> branches = new ArrayList<>();
+            for (ProjectCatalog.Branch branch : catalog.getBranches()) {
+                if (branch.getHead() == null && !counted.containsKey(branch.getName())) {
+                    continue;
+                }
+                ProjectCatalog.Branch count = counted.get(branch.getName());
+                branch.setCommitCount(count == null ? 0 : count.getCommitCount());
+                branch.setLastActivity(count == null ? null : count.getLastActivity());
+                branches.add(branch);
+            }
+            counted.forEach((name, count) -> {
+                if (name != null && branches.stream().noneMatch(branch -> name.equals(branch.getName()))) {
+                    branches.add(count);
+                }
+            });
+            branches.sort(BRANCH_ORDER);
+            catalog.setBranches(branches);
+            catalog.setCommitCount(counted.values().stream().mapToLong(ProjectCatalog.Branch::getCommitCount).sum());
+            catalog.setLastActivity(counted.values().stream().map(ProjectCatalog.Branch::getLastActivity)
+                    .max(Comparator.naturalOrder()).orElse(null));
+            catalog.setUpdatedAt(now);
+            bulk.replaceOne(new Query(Criteria.where("_id").is(catalog.getId())), catalog,
+                    FindAndReplaceOptions.options().upsert());
+        }
+        bulk.execute();
+    }
+
+    /**
+     * The token's repositories, building the catalog from the stored commits the first time a token synced
+     * before the catalog existed is listed.
+     */
+    public List<ProjectCatalog> projects(String provider, Class<?> recordType, String token) {
+        Query query = tokenQuery(provider, token).with(Sort.by(Sort.Direction.ASC, "repository"));
+        List<ProjectCatalog> catalogs = mongoTemplate.find(query, ProjectCatalog.class);
+        if (catalogs.isEmpty()) {
+            refreshCounts(provider, recordType, token);
+            catalogs = mongoTemplate.find(query, ProjectCatalog.class);
+        }
+        return catalogs;
+    }
+
+    public ProjectCatalog project(String provider, Class<?> recordType, String token, String repository) {
+        ProjectCatalog catalog = mongoTemplate.findById(catalogId(provider, token, repository), ProjectCatalog.class);
+        if (catalog == null && !mongoTemplate.exists(tokenQuery(provider, token), ProjectCatalog.class)) {
+            refreshCounts(provider, recordType, token);
+            catalog = mongoTemplate.findById(catalogId(provider, token, repository), ProjectCatalog.class);
+        }
+        return catalog;
+    }
+
+    private Query tokenQuery(String provider, String token) {
+        return new Query(Criteria.where("provider").is(provider).and("tokenHash").is(SyncProfiler.tokenHash(token)));
+    }
+
+    private String catalogId(String provider, String token, String repository) {
+        return provider + ":" + SyncProfiler.tokenHash(token) + ":" + repository;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.gitlabcommitlog.service;
+
+import java.time.Instant;
+
+/**
+ * Thrown instead of a request whose token's rate limit resets later than {@code max-retry-after}. Like a passed
+ * deadline, it ends the run as partial with its checkpoints kept, to be continued once the limit has reset.
+ */
+public class RateLimitExhaustedException extends SyncDeadlineException {
+    private final Instant resetAt;
+
+    public RateLimitExhaustedException(String message, Instant resetAt) {
+        super(message);
+        this.resetAt = resetAt;
+    }
+
+    public Instant getResetAt() {
+        return resetAt;
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.RepoCoverage;
+import com.example.gitlabcommitlog.model.SharedCommit;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Commits shared across tokens, plus per-repository coverage keyed by a fingerprint of the branch heads.
+ */
+@Component
+public class SharedCommitStore {
+    public static final String SCOPE_ALL = "all";
+    /**
+     * Characters of a commit message a listing shows; the full message is fetched per commit.
+     */
+    public static final int MESSAGE_PREVIEW_LENGTH = 200;
+    private static final List<String> LISTED_FIELDS = List.of("sha", "repository", "branch", "committedAt", "author",
+            "url");
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    private final MongoTemplate mongoTemplate;
+
+    public SharedCommitStore(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public static String commitKey(String provider, String repository, String sha) {
+        return provider + ":" + repository + ":" + sha;
+    }
+
+    /**
+     * {@code yyyyMMdd}, the form {@code committedDay} is stored in.
+     */
+    public static int dayKey(LocalDate date) {
+        return date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+
+    public static LocalDate fromDayKey(int dayKey) {
+        return LocalDate.of(dayKey / 10000, dayKey / 100 % 100, dayKey % 100);
+    }
+
+    public static String scope(String authorId) {
+        return authorId == null ? SCOPE_ALL : "author:" + authorId.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Existing commits only gain branches, the author identity and native dates, which older rows lack.
+     */
+    public void storeAll(List<SharedCommit> commits) {
+        if (commits.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SharedCommit.class);
+        for (SharedCommit commit : commits) {
+            Update update = new Update()
+                    .setOnInsert("provider", commit.getProvider())
+                    .setOnInsert("repository", commit.getRepository())
+                    .setOnInsert("sha", commit.getSha())
+                    .setOnInsert("committedAt", commit.getCommittedAt())
+                    .set("committedTime", commit.getCommittedTime())
+                    .set("committedDay", commit.getCommittedDay())
+                    .setOnInsert("author", commit.getAuthor())
+                    .setOnInsert("message", commit.getMessage())
+                    .setOnInsert("url", commit.getUrl());
+            update.addToSet("branches").each(commit.getBranches().toArray());
+            if (commit.getAuthorId() != null) {
+                update.set("authorId", commit.getAuthorId());
+            }
+            bulk.upsert(new Query(Criteria.where("_id").is(commit.getId())), update);
+        }
+        bulk.execute();
+    }
+
+    /**
+     * The first of {@code branchOrder} the commit was listed under, or {@code null}.
+     */
+    public static String attributeBranch(SharedCommit commit, Collection<String> branchOrder) {
+        List<String> branches = commit.getBranches();
+        if (branches == null || branches.isEmpty()) {
+            return null;
+        }
+        for (String branch : branchOrder) {
+            if (branches.contains(branch)) {
+                return branch;
+            }
+        }
+        return null;
+    }
+
+    public Stream<SharedCommit> streamRepository(String provider, String repository, LocalDate start, LocalDate end) {
+        Query query = new Query(Criteria.where("provider").is(provider).and("repository").is(repository)
+                .and("committedDay").gte(dayKey(start)).lte(dayKey(end)));
+        query.cursorBatchSize(500);
+        return mongoTemplate.stream(query, SharedCommit.class);
+    }
+
+    public Map<String, SharedCommit> findByKeys(Collection<String> keys) {
+        Map<String, SharedCommit> results = new HashMap<>();
+        if (keys.isEmpty()) {
+            return results;
+        }
+        for (SharedCommit commit : mongoTemplate.find(new Query(Criteria.where("_id").in(keys)), SharedCommit.class)) {
+            results.put(commit.getId(), commit);
+        }
+        return results;
+    }
+
+    public Set<String> listedUnder(String provider, String repository, Collection<String> shas,
+                                   Collection<String> branches) {
+        Set<String> listed = new HashSet<>();
+        if (shas.isEmpty() || branches.isEmpty()) {
+            return listed;
+        }
+        Query query = new Query(Criteria.where("_id")
+                .in(shas.stream().map(sha -> commitKey(provider, repository, sha)).toList())
+                .and("branches").in(branches));
+        query.fields().include("sha");
+        for (SharedCommit commit : mongoTemplate.find(query, SharedCommit.class)) {
+            listed.add(commit.getSha());
+        }
+        return listed;
+    }
+
+    /**
+     * The given fields with the message cut server-side to {@link #MESSAGE_PREVIEW_LENGTH} characters.
+     */
+    public static AggregationOperation previewProjection(List<String> fields) {
+        Document message = new Document("$ifNull", List.of("$message", ""));
+        Document projection = new Document("_id", 0);
+        for (String field : fields) {
+            projection.put(field, 1);
+        }
+        projection.put("message", new Document("$substrCP", List.of(message, 0, MESSAGE_PREVIEW_LENGTH)));
+        projection.put("messageTruncated",
+                new Document("$gt", List.of(new Document("$strLenCP", message), MESSAGE_PREVIEW_LENGTH)));
+        return context -> new Document("$project", projection);
+    }
+
+    /**
+     * Token rows matching {@code text} (MongoDB text search syntax), best match first.
+     */
+    public List<Document> searchMessages(Class<?> recordType, String token, String text, Pattern repository,
+                                         Pattern branch, long skip, int limit) {
+        List<AggregationOperation> stages = messageMatches(token, text, repository, branch);
+        stages.add(context -> new Document("$addFields", new Document("score", new Document("$meta", "textScore"))));
+        stages.add(Aggregation.sort(Sort.by(Sort.Direction.DESC, "score")
+                .and(Sort.by(Sort.Direction.DESC, "committedTime"))));
+        stages.add(Aggregation.skip(skip));
+        stages.add(Aggregation.limit(limit));
+        stages.add(previewProjection(LISTED_FIELDS));
+        return mongoTemplate.aggregate(Aggregation.newAggregation(stages), recordType, Document.class)
+                .getMappedResults();
+    }
+
+    public long countMessages(Class<?> recordType, String token, String text, Pattern repository, Pattern branch) {
+        List<AggregationOperation> stages = messageMatches(token, text, repository, branch);
+        stages.add(Aggregation.count().as("total"));
+        Document result = mongoTemplate.aggregate(Aggregation.newAggregation(stages), recordType,
+                Document.class).getUniqueMappedResult();
+        return result == null ? 0L : ((Number) result.get("total")).longValue();
+    }
+
+    private List<AggregationOperation> messageMatches(String token, String text, Pattern repository,
+                                                      Pattern branch) {
+        Criteria criteria = Criteria.where("token").is(token);
+        if (repository != null) {
+            criteria.and("repository").regex(repository);
+        }
+        if (branch != null) {
+            criteria.and("branch").regex(branch);
+        }
+        // $text has to open the pipeline, in the same stage as the equality on the index's token prefix.
+        Document match = new Document(criteria.getCriteriaObject());
+        match.putAll(TextCriteria.forDefaultLanguage().matching(text).getCriteriaObject());
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(context -> new Document("$match", match));
+        return stages;
+    }
+
+    public String fingerprint(Map<String, String> branchHeads) {
+        // Versioned, so coverage recorded before shared commits kept their branches no longer matches.
+        StringBuilder source = new StringBuilder("v2\n");
+        new TreeMap<>(branchHeads).forEach((branch, head) ->
+                source.append(branch).append('=').append(head).append('\n'));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * An author-scoped sync is also covered by an unscoped range.
+     */
+    public boolean isCovered(String provider, String repository, String scope, String fingerprint, LocalDate start,
+                             LocalDate end) {
+        if (covers(mongoTemplate.findById(coverageId(provider, repository, scope), RepoCoverage.class),
+                fingerprint, start, end)) {
+            return true;
+        }
+        return !SCOPE_ALL.equals(scope) && covers(mongoTemplate.findById(
+                coverageId(provider, repository, SCOPE_ALL), RepoCoverage.class), fingerprint, start, end);
+    }
+
+    private boolean covers(RepoCoverage coverage, String fingerprint, LocalDate start, LocalDate end) {
+        return coverage != null
+                && fingerprint.equals(coverage.getFingerprint())
+                && !LocalDate.parse(coverage.getSince()).isAfter(start)
+                && !effectiveUntil(coverage).isBefore(end);
+    }
+
+    public void recordCoverage(String provider, String repository, String scope, String fingerprint, LocalDate start,
+                               LocalDate end) {
+        String id = coverageId(provider, repository, scope);
+        RepoCoverage existing = mongoTemplate.findById(id, RepoCoverage.class);
+        LocalDate since = start;
+        LocalDate until = end;
+        if (existing != null && fingerprint.equals(existing.getFingerprint())) {
+            LocalDate existingSince = LocalDate.parse(existing.getSince());
+            LocalDate existingUntil = effectiveUntil(existing);
+            if (!existingSince.isAfter(end.plusDays(1)) && !existingUntil.isBefore(start.minusDays(1))) {
+                since = existingSince.isBefore(start) ? existingSince : start;
+                until = existingUntil.isAfter(end) ? existingUntil : end;
+            }
+        }
+        LocalDate today = LocalDate.now(ZoneId.systemDefault());
+        if (until.isAfter(today)) {
+            until = today;
+        }
+        mongoTemplate.save(new RepoCoverage(id, provider, repository, scope, fingerprint,
+                since.format(DATE_FORMATTER), until.format(DATE_FORMATTER), Instant.now()));
+    }
+
+    /**
+     * A range reaching the day it was recorded stays complete: a new commit would move a branch head.
+     */
+    private LocalDate effectiveUntil(RepoCoverage coverage) {
+        LocalDate until = LocalDate.parse(coverage.getUntil());
+        LocalDate recordedOn = LocalDate.ofInstant(coverage.getUpdatedAt(), ZoneId.systemDefault());
+        return until.isBefore(recordedOn) ? until : LocalDate.MAX;
+    }
+
+    private String coverageId(String provider, String repository, String scope) {
+        return SCOPE_ALL.equals(scope) ? provider + ":" + repository : provider + ":" + repository + ":" + scope;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.ProjectCheckpoint;
+import com.example.gitlabcommitlog.model.SyncCheckpoint;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sync progress in {@code sync_checkpoints}: counts and page position move in one update, so replaying the page
+ * after the last recorded position is safe. Writes come from one thread per run and instance.
+ */
+@Component
+public class SyncCheckpointStore {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final String PROGRESS_FIELD = "projectsInProgress";
+
+    private final MongoTemplate mongoTemplate;
+
+    public SyncCheckpointStore(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public SyncCheckpoint open(String provider, String token, String scope, LocalDate start, LocalDate end) {
+        String tokenHash = SyncProfiler.tokenHash(token);
+        String id = provider + ":" + tokenHash + ":" + scope + ":" + start.format(DATE_FORMATTER) + ":"
+                + end.format(DATE_FORMATTER);
+        SyncCheckpoint existing = attach(id);
+        if (existing != null) {
+            return existing;
+        }
+        SyncCheckpoint checkpoint = new SyncCheckpoint();
+        checkpoint.setId(id);
+        checkpoint.setProvider(provider);
+        checkpoint.setTokenHash(tokenHash);
+        checkpoint.setScope(scope);
+        checkpoint.setRangeStart(start.format(DATE_FORMATTER));
+        checkpoint.setRangeEnd(end.format(DATE_FORMATTER));
+        checkpoint.setStartedAt(Instant.now());
+        checkpoint.setUpdatedAt(checkpoint.getStartedAt());
+        mongoTemplate.save(checkpoint);
+        return checkpoint;
+    }
+
+    public SyncCheckpoint attach(String id) {
+        SyncCheckpoint checkpoint = mongoTemplate.findById(id, SyncCheckpoint.class);
+        if (checkpoint != null) {
+            checkpoint.setProjectsInProgress(new ConcurrentHashMap<>(checkpoint.getProjectsInProgress()));
+        }
+        return checkpoint;
+    }
+
+    public boolean isResumed(SyncCheckpoint checkpoint) {
+        return !checkpoint.getCompletedProjects().isEmpty() || !checkpoint.getProjectsInProgress().isEmpty();
+    }
+
+    /**
+     * Only writes made under {@code claim} are recorded for the project from here on, which fences out a
+     * previous owner whose claim lapsed.
+     */
+    public boolean claimProject(SyncCheckpoint checkpoint, String project, String claim) {
+        String path = PROGRESS_FIELD + "." + project;
+        Query query = new Query(Criteria.where("_id").is(checkpoint.getId()).and("completedProjects").ne(project));
+        query.fields().include(path);
+        SyncCheckpoint current = mongoTemplate.findAndModify(query, new Update().set(path + ".claim", claim),
+                FindAndModifyOptions.options().returnNew(true), SyncCheckpoint.class);
+        if (current == null) {
+            return false;
+        }
+        ProjectCheckpoint progress = current.getProjectsInProgress().get(project);
+        checkpoint.getResumedProgress().put(project, new ProjectCheckpoint(progress));
+        checkpoint.getProjectsInProgress().put(project, progress);
+        return true;
+    }
+
+    public boolean isBranchCompleted(SyncCheckpoint checkpoint, String project, String branch) {
+        ProjectCheckpoint progress = checkpoint.getResumedProgress().get(project);
+        return progress != null && progress.getCompletedBranches().contains(branch);
+    }
+
+    public int resumePage(SyncCheckpoint checkpoint, String project, String branch) {
+        ProjectCheckpoint progress = checkpoint.getResumedProgress().get(project);
+        if (progress != null && branch.equals(progress.getCurrentBranch())) {
+            return Math.max(progress.getNextPage(), 1);
+        }
+        return 1;
+    }
+
+    /**
+     * Branches listed before the project was resumed, other than {@code branch}, whose commits were already
+     * counted.
+     */
+    public Set<String> listedBefore(SyncCheckpoint checkpoint, String project, String branch) {
+        ProjectCheckpoint progress = checkpoint.getResumedProgress().get(project);
+        Set<String> branches = new HashSet<>();
+        if (progress != null) {
+            branches.addAll(progress.getCompletedBranches());
+            if (progress.getCurrentBranch() != null && !progress.getCurrentBranch().equals(branch)) {
+                branches.add(progress.getCurrentBranch());
+            }
+        }
+        return branches;
+    }
+
+    public boolean recordPage(SyncCheckpoint checkpoint, String project, String branch, int nextPage,
+                              Map<LocalDate, Integer> counts) {
+        String path = PROGRESS_FIELD + "." + project;
+        ProjectCheckpoint progress = checkpoint.getProjectsInProgress().get(project);
+        Update update = new Update()
+                .set(path + ".currentBranch", branch)
+                .set(path + ".nextPage", nextPage);
+        if (!apply(checkpoint, project, progress, update, counts)) {
+            return false;
+        }
+        progress.setCurrentBranch(branch);
+        progress.setNextPage(nextPage);
+        return true;
+    }
+
+    public boolean completeBranch(SyncCheckpoint checkpoint, String project, String branch) {
+        String path = PROGRESS_FIELD + "." + project;
+        ProjectCheckpoint progress = checkpoint.getProjectsInProgress().get(project);
+        Update update = new Update()
+                .addToSet(path + ".completedBranches", branch)
+                .unset(path + ".currentBranch")
+                .set(path + ".nextPage", 1);
+        if (!apply(checkpoint, project, progress, update, new HashMap<>())) {
+            return false;
+        }
+        progress.getCompletedBranches().add(branch);
+        progress.setCurrentBranch(null);
+        progress.setNextPage(1);
+        return true;
+    }
+
+    public boolean completeProject(SyncCheckpoint checkpoint, String project, Map<LocalDate, Integer> counts) {
+        ProjectCheckpoint progress = checkpoint.getProjectsInProgress().get(project);
+        Update update = new Update()
+                .addToSet("completedProjects", project)
+                .unset(PROGRESS_FIELD + "." + project);
+        if (!apply(checkpoint, project, progress, update, counts)) {
+            return false;
+        }
+        checkpoint.getCompletedProjects().add(project);
+        checkpoint.getProjectsInProgress().remove(project);
+        return true;
+    }
+
+    public Map<LocalDate, Integer> dailyCounts(SyncCheckpoint checkpoint) {
+        SyncCheckpoint stored = mongoTemplate.findById(checkpoint.getId(), SyncCheckpoint.class);
+        Map<LocalDate, Integer> counts = new TreeMap<>();
+        (stored != null ? stored : checkpoint).getDailyCounts()
+                .forEach((date, count) -> counts.put(LocalDate.parse(date), count));
+        return counts;
+    }
+
+    public Map<LocalDate, Integer> drainUnflushed(SyncCheckpoint checkpoint) {
+        Map<LocalDate, Integer> counts = new TreeMap<>();
+        for (String date : checkpoint.getUnflushedDates()) {
+            counts.put(LocalDate.parse(date), checkpoint.getDailyCounts().getOrDefault(date, 0));
+        }
+        checkpoint.getUnflushedDates().clear();
+        return counts;
+    }
+
+    public void finish(SyncCheckpoint checkpoint) {
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(checkpoint.getId())), SyncCheckpoint.class);
+    }
+
+    private boolean apply(SyncCheckpoint checkpoint, String project, ProjectCheckpoint progress, Update update,
+                          Map<LocalDate, Integer> counts) {
+        if (progress == null) {
+            counts.clear();
+            return false;
+        }
+        counts.forEach((date, count) -> update.inc("dailyCounts." + date.format(DATE_FORMATTER), count));
+        Instant now = Instant.now();
+        update.set("updatedAt", now);
+        Query query = new Query(Criteria.where("_id").is(checkpoint.getId())
+                .and(PROGRESS_FIELD + "." + project + ".claim").is(progress.getClaim()));
+        boolean matched = mongoTemplate.updateFirst(query, update, SyncCheckpoint.class).getMatchedCount() > 0;
+        if (matched) {
+            counts.forEach((date, count) -> {
+                String key = date.format(DATE_FORMATTER);
+                checkpoint.getDailyCounts().merge(key, count, Integer::sum);
+                checkpoint.getUnflushedDates().add(key);
+            });
+            checkpoint.setUpdatedAt(now);
+        }
+        counts.clear();
+        return matched;
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.config.SyncProperties;
+import com.example.gitlabcommitlog.model.SyncCheckpoint;
+import com.example.gitlabcommitlog.model.SyncLease;
+import com.example.gitlabcommitlog.model.SyncWorkItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Per-token leases ({@code sync_leases}) and per-repository work items ({@code sync_work}) shared by all
+ * instances; both are renewed by a heartbeat and taken over once they lapse. Neither stores the token itself, so
+ * an instance only helps with runs of tokens it was asked about.
+ */
+@Component
+public class SyncCoordinator implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SyncCoordinator.class);
+    private static final String PENDING = "pending";
+    private static final String CLAIMED = "claimed";
+    private static final String DONE = "done";
+    private static final int MAX_KNOWN_TOKENS = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final SyncMetrics metrics;
+    private final SyncProperties syncProperties;
+    private final String instanceId = resolveInstanceId();
+    private final Set<String> heldLeases = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> claimedRuns = new ConcurrentHashMap<>();
+    private final Map<String, String> knownTokens = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_KNOWN_TOKENS;
+        }
+    };
+    private final List<Thread> workers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService heartbeat;
+
+    public SyncCoordinator(MongoTemplate mongoTemplate, SyncMetrics metrics, SyncProperties syncProperties) {
+        this.mongoTemplate = mongoTemplate;
+        this.metrics = metrics;
+        this.syncProperties = syncProperties;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "sync-lease-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMillis = Math.max(syncProperties.getLeaseTtl().toMillis() / 3, 1000);
+        heartbeat.scheduleAtFixedRate(this::renew, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        logger.info("Sync coordinator started, instance={}", instanceId);
+    }
+
+    /**
+     * Keep the token in memory, by its hash, so this instance can help with runs of it started elsewhere.
+     */
+    public void rememberToken(String token) {
+        synchronized (knownTokens) {
+            knownTokens.put(SyncProfiler.tokenHash(token), token);
+        }
+    }
+
+    public String knownToken(String tokenHash) {
+        synchronized (knownTokens) {
+            return knownTokens.get(tokenHash);
+        }
+    }
+
+    /**
+     * Within this instance a lease is held by one caller at a time.
+     */
+    public boolean tryAcquire(String key) {
+        if (!heldLeases.add(key)) {
+            return false;
+        }
+        Instant now = Instant.now();
+        Query query = new Query(new Criteria().andOperator(
+                Criteria.where("_id").is(key),
+                new Criteria().orOperator(Criteria.where("expiresAt").lt(now),
+                        Criteria.where("owner").is(instanceId))));
+        Update update = new Update()
+                .set("owner", instanceId)
+                .set("acquiredAt", now)
+                .set("expiresAt", now.plus(syncProperties.getLeaseTtl()));
+        try {
+            mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    SyncLease.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // The lease exists and is held by another instance, so the upsert tried to insert it again.
+            heldLeases.remove(key);
+            return false;
+        } catch (RuntimeException e) {
+            heldLeases.remove(key);
+            throw e;
+        }
+    }
+
+    public void awaitLease(String key) {
+        while (!tryAcquire(key)) {
+            pause();
+        }
+    }
+
+    public boolean awaitLease(String key, Instant deadline) {
+        while (!tryAcquire(key)) {
+            if (Instant.now().isAfter(deadline)) {
+                return false;
+            }
+            pause();
+        }
+        return true;
+    }
+
+    public void release(String key) {
+        heldLeases.remove(key);
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(key).and("owner").is(instanceId)), SyncLease.class);
+    }
+
+    /**
+     * Items published by an earlier attempt of the same run keep their state.
+     */
+    public void publish(SyncCheckpoint checkpoint, String authorId, Map<String, Map<String, Object>> projects) {
+        if (projects.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SyncWorkItem.class);
+        int[] priority = {0};
+        projects.forEach((projectKey, project) -> bulk.upsert(
+                new Query(Criteria.where("_id").is(checkpoint.getId() + ":" + projectKey)),
+                new Update()
+                        .setOnInsert("runId", checkpoint.getId())
+                        .setOnInsert("provider", checkpoint.getProvider())
+                        .setOnInsert("tokenHash", checkpoint.getTokenHash())
+                        .setOnInsert("scope", checkpoint.getScope())
+                        .setOnInsert("authorId", authorId)
+                        .setOnInsert("rangeStart", checkpoint.getRangeStart())
+                        .setOnInsert("rangeEnd", checkpoint.getRangeEnd())
+                        .setOnInsert("projectKey", projectKey)
+                        .setOnInsert("project", project)
+                        .setOnInsert("status", PENDING)
+                        .setOnInsert("attempts", 0)
+                        .set("priority", priority[0]++)
+                        .set("coordinator", instanceId)
+                        .set("updatedAt", now)));
+        bulk.execute();
+    }
+
+    /**
+     * Without a {@code runId}, claims work of runs coordinated by other instances for tokens this instance knows.
+     */
+    public SyncWorkItem claim(String provider, String runId) {
+        Instant now = Instant.now();
+        Criteria scope = Criteria.where("provider").is(provider);
+        if (runId != null) {
+            scope.and("runId").is(runId);
+        } else {
+            List<String> tokenHashes;
+            synchronized (knownTokens) {
+                tokenHashes = List.copyOf(knownTokens.keySet());
+            }
+            if (tokenHashes.isEmpty()) {
+                return null;
+            }
+            scope.and("coordinator").ne(instanceId).and("tokenHash").in(tokenHashes);
+        }
+        Criteria claimable = new Criteria().orOperator(
+                Criteria.where("status").is(PENDING),
+                Criteria.where("status").is(CLAIMED).and("leaseExpiresAt").lt(now));
+        Update update = new Update()
+                .set("status", CLAIMED)
+                .set("owner", instanceId)
+                .set("claimId", UUID.randomUUID().toString())
+                .set("leaseExpiresAt", now.plus(syncProperties.getLeaseTtl()))
+                .set("updatedAt", now)
+                .inc("attempts", 1);
+        Query query = new Query(new Criteria().andOperator(scope, claimable))
+                .with(Sort.by(Sort.Direction.ASC, "priority"));
+        SyncWorkItem item = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                SyncWorkItem.class);
+        if (item == null) {
+            return null;
+        }
+        claimedRuns.put(item.getId(), item.getRunId());
+        if (item.getAttempts() > 1) {
+            logger.info("Took over lapsed repository claim, item={}, attempts={}", item.getProjectKey(),
+                    item.getAttempts());
+            metrics.recordWorkClaim(provider, "taken_over");
+        } else {
+            metrics.recordWorkClaim(provider, "claimed");
+        }
+        return item;
+    }
+
+    public boolean complete(SyncWorkItem item) {
+        claimedRuns.remove(item.getId());
+        return mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(item.getId()).and("claimId").is(item.getClaimId())),
+                new Update().set("status", DONE).set("updatedAt", Instant.now()).unset("leaseExpiresAt"),
+                SyncWorkItem.class).getMatchedCount() > 0;
+    }
+
+    public void release(SyncWorkItem item) {
+        if (claimedRuns.remove(item.getId()) == null) {
+            return;
+        }
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(item.getId())
+                        .and("claimId").is(item.getClaimId()).and("status").is(CLAIMED)),
+                unclaim(), SyncWorkItem.class);
+    }
+
+    public void releaseClaims(String runId) {
+        claimedRuns.values().removeIf(runId::equals);
+        mongoTemplate.updateMulti(new Query(Criteria.where("runId").is(runId).and("owner").is(instanceId)
+                .and("status").is(CLAIMED)), unclaim(), SyncWorkItem.class);
+    }
+
+    public boolean hasOpenWork(String runId) {
+        return mongoTemplate.exists(new Query(Criteria.where("runId").is(runId).and("status").ne(DONE)),
+                SyncWorkItem.class);
+    }
+
+    public List<SyncWorkItem> openItems(String runId) {
+        return mongoTemplate.find(new Query(Criteria.where("runId").is(runId).and("status").ne(DONE))
+                .with(Sort.by(Sort.Direction.ASC, "priority")), SyncWorkItem.class);
+    }
+
+    public void clearRun(String runId) {
+        mongoTemplate.remove(new Query(Criteria.where("runId").is(runId)), SyncWorkItem.class);
+    }
+
+    public void pause() {
+        try {
+            Thread.sleep(syncProperties.getWorkPollInterval().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for sync work");
+        }
+    }
+
+    /**
+     * An item the handler returns without completing is released again.
+     */
+    public void startWorker(String provider, Consumer<SyncWorkItem> handler) {
+        Thread worker = new Thread(() -> runWorker(provider, handler), "sync-work-" + provider);
+        worker.setDaemon(true);
+        workers.add(worker);
+        worker.start();
+    }
+
+    private void runWorker(String provider, Consumer<SyncWorkItem> handler) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                SyncWorkItem item = claim(provider, null);
+                if (item == null) {
+                    pause();
+                    continue;
+                }
+                try {
+                    handler.accept(item);
+                } finally {
+                    release(item);
+                }
+            } catch (CancellationException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.warn("Sync work item failed, provider={}", provider, e);
+                try {
+                    pause();
+                } catch (CancellationException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void renew() {
+        try {
+            Instant expiresAt = Instant.now().plus(syncProperties.getLeaseTtl());
+            if (!heldLeases.isEmpty()) {
+                mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(heldLeases).and("owner").is(instanceId)),
+                        new Update().set("expiresAt", expiresAt), SyncLease.class);
+            }
+            if (!claimedRuns.isEmpty()) {
+                mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(claimedRuns.keySet())
+                                .and("owner").is(instanceId).and("status").is(CLAIMED)),
+                        new Update().set("leaseExpiresAt", expiresAt), SyncWorkItem.class);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to renew sync leases, instance={}", instanceId, e);
+        }
+    }
+
+    private Update unclaim() {
+        return new Update().set("status", PENDING).set("updatedAt", Instant.now())
+                .unset("owner").unset("leaseExpiresAt");
+    }
+
+    @Override
+    public void close() {
+        workers.forEach(Thread::interrupt);
+        heartbeat.shutdownNow();
+        try {
+            if (!heldLeases.isEmpty()) {
+                mongoTemplate.remove(new Query(Criteria.where("_id").in(heldLeases).and("owner").is(instanceId)),
+                        SyncLease.class);
+            }
+            if (!claimedRuns.isEmpty()) {
+                mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(claimedRuns.keySet())
+                        .and("owner").is(instanceId).and("status").is(CLAIMED)), unclaim(), SyncWorkItem.class);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to hand over sync leases on shutdown, instance={}", instanceId, e);
+        }
+    }
+
+    private static String resolveInstanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
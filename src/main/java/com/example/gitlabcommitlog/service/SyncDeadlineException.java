@@ -0,0 +1,11 @@
+package com.example.gitlabcommitlog.service;
+
+/**
+ * Thrown by an API request that could only be sent after the deadline of the sync run it belongs to. The run
+ * stops there and leaves the rest to the sync continuing it.
+ */
+public class SyncDeadlineException extends RuntimeException {
+    public SyncDeadlineException(String message) {
+        super(message);
+    }
+}
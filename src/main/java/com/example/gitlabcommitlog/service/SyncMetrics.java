@@ -0,0 +1,184 @@
+package com.example.gitlabcommitlog.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters for the sync pipeline. Mongo command latency is recorded by Spring Boot's
+ * auto-configured {@code mongodb.driver.commands} timer, so only sync-specific signals live here.
+ */
+@Component
+public class SyncMetrics {
+    public static final String GITHUB = "github";
+    public static final String GITLAB = "gitlab";
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicLong> rateLimitRemaining = new ConcurrentHashMap<>();
+    private final Map<String, Set<Collection<?>>> pipelineQueues = new ConcurrentHashMap<>();
+
+    public SyncMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void recordApiCall(String provider, String endpoint, String status, long durationNanos) {
+        Timer.builder("sync.api.requests")
+                .description("Outbound calls to the Git provider API")
+                .tags("provider", provider, "endpoint", endpoint, "status", status)
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPage(String provider, String endpoint) {
+        Counter.builder("sync.api.pages")
+                .description("Result pages fetched from the Git provider API")
+                .tags("provider", provider, "endpoint", endpoint)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Count commits by outcome: {@code ingested}, {@code deduplicated}, {@code skipped} or {@code reused}.
+     */
+    public void recordCommits(String provider, String outcome, long count) {
+        if (count <= 0) {
+            return;
+        }
+        Counter.builder("sync.commits")
+                .description("Commits seen during sync, by outcome")
+                .tags("provider", provider, "outcome", outcome)
+                .register(registry)
+                .increment(count);
+    }
+
+    /**
+     * Count project metadata lookups by outcome: {@code cached} or {@code fetched}.
+     */
+    public void recordMetadata(String provider, String outcome) {
+        Counter.builder("sync.project.metadata")
+                .description("Project metadata lookups, by cache outcome")
+                .tags("provider", provider, "outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Count repository work claims by outcome: {@code claimed}, or {@code taken_over} when the previous
+     * owner's claim had lapsed.
+     */
+    public void recordWorkClaim(String provider, String outcome) {
+        Counter.builder("sync.work.claims")
+                .description("Repository work items claimed from the shared work queue")
+                .tags("provider", provider, "outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Count API requests retried, by the status or {@code IO_ERROR} that caused the retry.
+     */
+    public void recordApiRetry(String provider, String endpoint, String reason) {
+        Counter.builder("sync.api.retries")
+                .description("Outbound API requests retried after a transient failure")
+                .tags("provider", provider, "endpoint", endpoint, "reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Count hedged API requests by outcome: {@code sent}, or {@code won} when the hedge answered first.
+     */
+    public void recordApiHedge(String provider, String endpoint, String outcome) {
+        Counter.builder("sync.api.hedges")
+                .description("Second requests sent for slow outbound API requests")
+                .tags("provider", provider, "endpoint", endpoint, "outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordCircuitOpened(String provider, String host) {
+        Counter.builder("sync.api.circuit.opened")
+                .description("Times requests to a provider host were paused after repeated failures")
+                .tags("provider", provider, "host", host)
+                .register(registry)
+                .increment();
+    }
+
+    public <T> T timePhase(String provider, String phase, Supplier<T> action) {
+        return phaseTimer(provider, phase).record(action);
+    }
+
+    public void timePhase(String provider, String phase, Runnable action) {
+        phaseTimer(provider, phase).record(action);
+    }
+
+    public void recordPhase(String provider, String phase, long durationNanos) {
+        phaseTimer(provider, phase).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void updateRateLimit(String provider, String remaining) {
+        if (remaining == null || remaining.isBlank()) {
+            return;
+        }
+        try {
+            long value = Long.parseLong(remaining.trim());
+            rateLimitRemaining.computeIfAbsent(provider, key -> registry.gauge(
+                    "sync.api.rate.limit.remaining", Tags.of("provider", key), new AtomicLong(-1)))
+                    .set(value);
+        } catch (NumberFormatException ignored) {
+            // Providers occasionally send non-numeric values; keep the last known budget.
+        }
+    }
+
+    /**
+     * Time a pipeline stage spent per state: {@code busy} working, {@code blocked} waiting for queue space
+     * (fetch) or {@code idle} waiting for work (write). Utilization is busy over the sum of all states.
+     */
+    public void recordPipelineStage(String provider, String stage, String state, long durationNanos) {
+        Timer.builder("sync.pipeline.stage.time")
+                .description("Time spent by sync pipeline stages, by state")
+                .tags("provider", provider, "stage", stage, "state", state)
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Include the queue in the {@code sync.pipeline.queue.depth} gauge until it is unregistered.
+     */
+    public void registerQueue(String provider, Collection<?> queue) {
+        pipelineQueues.computeIfAbsent(provider, key -> {
+            Set<Collection<?>> queues = ConcurrentHashMap.newKeySet();
+            Gauge.builder("sync.pipeline.queue.depth", queues,
+                            live -> live.stream().mapToInt(Collection::size).sum())
+                    .description("Fetched pages waiting to be written")
+                    .tags("provider", key)
+                    .register(registry);
+            return queues;
+        }).add(queue);
+    }
+
+    public void unregisterQueue(String provider, Collection<?> queue) {
+        Set<Collection<?>> queues = pipelineQueues.get(provider);
+        if (queues != null) {
+            queues.remove(queue);
+        }
+    }
+
+    private Timer phaseTimer(String provider, String phase) {
+        return Timer.builder("sync.phase.duration")
+                .description("Time spent in each sync phase")
+                .tags("provider", provider, "phase", phase)
+                .register(registry);
+    }
+}
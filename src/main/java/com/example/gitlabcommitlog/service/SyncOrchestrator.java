@@ -0,0 +1,564 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.config.SyncProperties;
+import com.example.gitlabcommitlog.model.SyncCheckpoint;
+import com.example.gitlabcommitlog.model.SyncProjectProfile;
+import com.example.gitlabcommitlog.model.SyncState;
+import com.example.gitlabcommitlog.model.SyncWorkItem;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Runs the syncs of both providers; the API calls and commit rows are left to the {@link SyncProvider}.
+ */
+@Component
+public class SyncOrchestrator {
+    private static final Logger logger = LoggerFactory.getLogger(SyncOrchestrator.class);
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+    // GitLab refreshes last_activity_at at most once an hour
+    private static final Duration ACTIVITY_SLACK = Duration.ofHours(1);
+
+    private final MongoTemplate mongoTemplate;
+    private final SyncMetrics metrics;
+    private final SyncProfiler profiler;
+    private final SharedCommitStore sharedCommits;
+    private final SyncCheckpointStore checkpoints;
+    private final SyncCoordinator coordinator;
+    private final CommitRollupStore rollups;
+    private final HeatmapStore heatmaps;
+    private final CommitDayCountStore dayCounts;
+    private final ProjectCatalogStore catalog;
+    private final SyncStateStore syncStates;
+    private final SyncRefresher refresher;
+    private final SyncScheduler scheduler;
+    private final SyncProperties syncProperties;
+
+    public SyncOrchestrator(MongoTemplate mongoTemplate, SyncMetrics metrics, SyncProfiler profiler,
+                            SharedCommitStore sharedCommits, SyncCheckpointStore checkpoints,
+                            SyncCoordinator coordinator, CommitRollupStore rollups, HeatmapStore heatmaps,
+                            CommitDayCountStore dayCounts, ProjectCatalogStore catalog, SyncStateStore syncStates,
+                            SyncRefresher refresher, SyncScheduler scheduler, SyncProperties syncProperties) {
+        this.mongoTemplate = mongoTemplate;
+        this.metrics = metrics;
+        this.profiler = profiler;
+        this.sharedCommits = sharedCommits;
+        this.checkpoints = checkpoints;
+        this.coordinator = coordinator;
+        this.rollups = rollups;
+        this.heatmaps = heatmaps;
+        this.dayCounts = dayCounts;
+        this.catalog = catalog;
+        this.syncStates = syncStates;
+        this.refresher = refresher;
+        this.scheduler = scheduler;
+        this.syncProperties = syncProperties;
+    }
+
+    public int interactiveWeight() {
+        return scheduler.interactiveWeight();
+    }
+
+    <P> void startWorker(SyncProvider<P> provider) {
+        coordinator.startWorker(provider.name(), item -> processWorkItem(provider, item));
+    }
+
+    /**
+     * Past {@code deadline} the rest of the run is left to a background sync resuming from the checkpoint.
+     */
+    <P> SyncOutcome syncRange(SyncProvider<P> provider, LocalDate start, LocalDate end, String token, int weight,
+                              Instant deadline) {
+        if (token == null || token.isBlank()) {
+            return new SyncOutcome(Map.of(), true, List.of());
+        }
+        String name = provider.name();
+        String maskedToken = maskToken(token);
+        OffsetDateTime since = start.atStartOfDay(ZoneId.systemDefault()).toOffsetDateTime();
+        String leaseKey = name + ":" + SyncProfiler.tokenHash(token);
+        coordinator.rememberToken(token);
+        if (!coordinator.tryAcquire(leaseKey)) {
+            logger.info("Waiting for the running {} sync of the same token to finish, token={}", name, maskedToken);
+            if (deadline == null) {
+                coordinator.awaitLease(leaseKey);
+            } else if (!coordinator.awaitLease(leaseKey, deadline)) {
+                logger.info("Sync budget spent waiting for the running sync, token={}", maskedToken);
+                syncInBackground(provider, start, end, token);
+                return new SyncOutcome(Map.of(), false, List.of());
+            }
+        }
+
+        Map<LocalDate, Integer> dailyCounts;
+        List<String> pendingProjects = null;
+        long syncStartNanos = System.nanoTime();
+        SyncProfile profile = profiler.start(name, token, start, end, deadline);
+        String runId = null;
+        RuntimeException failure = null;
+
+        logger.info("Start syncing {} commits, token={}, range={} ~ {}", name, maskedToken, start, end);
+        try {
+            profiler.timeMongo(() -> syncStates.markStarted(name, token));
+            List<Map<String, Object>> projects = metrics.timePhase(name, "projects",
+                    () -> provider.fetchProjects(token, since.minus(ACTIVITY_SLACK)));
+            logger.info("{} projects to process: {}", name, projects.size());
+            String authorId = syncProperties.isAuthorScope()
+                    ? metrics.timePhase(name, "identity", () -> provider.fetchAuthorIdentity(token))
+                    : null;
+            if (authorId != null) {
+                logger.info("Author-scoped sync, author={}", authorId);
+            }
+            SyncCheckpoint checkpoint = profiler.timeMongo(() -> checkpoints.open(name, token,
+                    SharedCommitStore.scope(authorId), start, end));
+            runId = checkpoint.getId();
+            if (checkpoints.isResumed(checkpoint)) {
+                logger.info("Resuming from checkpoint, completed projects={}, projects in progress={}",
+                        checkpoint.getCompletedProjects().size(), checkpoint.getProjectsInProgress().size());
+            }
+            profiler.timeMongo(() -> coordinator.publish(checkpoint, authorId, workItemProjects(provider, projects)));
+            Map<String, P> knownProjects = profiler.timeMongo(() -> provider.loadProjectInfos(token));
+            if (processRun(provider, checkpoint, token, knownProjects, weight, deadline)) {
+                Map<LocalDate, Integer> counts = profiler.timeMongo(() -> checkpoints.dailyCounts(checkpoint));
+                metrics.timePhase(name, "daily_counts", () -> profiler.timeMongo(() -> {
+                    upsertDailyCounts(provider, start, end, counts, token);
+                    heatmaps.replace(name, token, start, end, counts);
+                    refreshAggregates(provider, token, start, end);
+                }));
+                dailyCounts = counts;
+                profiler.timeMongo(() -> {
+                    checkpoints.finish(checkpoint);
+                    coordinator.clearRun(checkpoint.getId());
+                });
+            } else {
+                profiler.timeMongo(() -> coordinator.releaseClaims(checkpoint.getId()));
+                flushProgress(provider, checkpoint, token);
+                dailyCounts = profiler.timeMongo(() -> checkpoints.dailyCounts(checkpoint));
+                // The daily counts keep the raised values; counts kept from the commit rows are exact however far
+                // the run got.
+                metrics.timePhase(name, "daily_counts",
+                        () -> profiler.timeMongo(() -> refreshAggregates(provider, token, start, end)));
+                pendingProjects = profiler.timeMongo(() -> coordinator.openItems(checkpoint.getId())).stream()
+                        .map(item -> provider.projectName(item.getProject()))
+                        .toList();
+            }
+        } catch (SyncDeadlineException e) {
+            // Only listing the projects and the author calls the API outside the run's pipeline, so there is no
+            // progress to keep yet.
+            logger.info("Sync stopped before its projects were listed, token={}: {}", maskedToken, e.getMessage());
+            dailyCounts = Map.of();
+            pendingProjects = List.of();
+        } catch (RuntimeException e) {
+            failure = e;
+            if (runId != null) {
+                coordinator.releaseClaims(runId);
+            }
+            profiler.finish(profile, e);
+            throw e;
+        } finally {
+            try {
+                if (failure == null && pendingProjects != null) {
+                    heatmaps.advance(name, token, syncStates.finishPartial(name, token));
+                } else if (failure == null) {
+                    heatmaps.advance(name, token, syncStates.finish(name, token, start, end, null));
+                } else {
+                    syncStates.finish(name, token, start, end, failure);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to record the sync state, token={}", maskedToken, e);
+            }
+            coordinator.release(leaseKey);
+        }
+        profiler.finish(profile, null);
+        metrics.recordPhase(name, "total", System.nanoTime() - syncStartNanos);
+        if (pendingProjects != null) {
+            Instant rateLimitResetAt = profile.getRateLimitedUntil();
+            if (rateLimitResetAt != null) {
+                // Continuing right away would stop at the same limit; the next refresh after the reset resumes.
+                logger.info("Rate limit exhausted until {}, token={}, days so far={}, pending projects={}",
+                        rateLimitResetAt, maskedToken, dailyCounts.size(), pendingProjects.size());
+            } else {
+                logger.info("Sync budget spent, token={}, days so far={}, pending projects={}", maskedToken,
+                        dailyCounts.size(), pendingProjects.size());
+                syncInBackground(provider, start, end, token);
+            }
+            return new SyncOutcome(dailyCounts, false, pendingProjects);
+        }
+        logger.info("{} sync finished, token={}, total days={}", name, maskedToken, dailyCounts.size());
+        return new SyncOutcome(dailyCounts, true, List.of());
+    }
+
+    SyncState syncState(SyncProvider<?> provider, String token) {
+        coordinator.rememberToken(token);
+        SyncState state = syncStates.get(provider.name(), provider.recordType(), token);
+        logger.info("Check {} cached data, token={}, lastSyncedAt={}", provider.name(), maskToken(token),
+                state == null ? null : state.getLastSyncedAt());
+        return state;
+    }
+
+    /**
+     * Returns whether a sync of the token is running, on this instance or another.
+     */
+    boolean refreshIfStale(SyncProvider<?> provider, String token, SyncState state) {
+        if (refresher.isRunning(provider.name() + ":" + token)) {
+            return true;
+        }
+        Duration freshness = syncProperties.getFreshness();
+        if (!syncStates.isStale(state, freshness)) {
+            return SyncState.SYNCING.equals(state.getStatus());
+        }
+        if (!syncStates.claimRefresh(provider.name(), token, freshness)) {
+            // Another instance is refreshing the token, or has just done so.
+            return true;
+        }
+        LocalDate end = LocalDate.now(ZoneId.systemDefault());
+        LocalDate yearStart = end.minusYears(1).plusDays(1);
+        LocalDate dayBefore = state.getLastSyncedAt() == null ? yearStart
+                : LocalDate.ofInstant(state.getLastSyncedAt(), ZoneId.systemDefault()).minusDays(1);
+        LocalDate from = dayBefore.isAfter(yearStart) ? dayBefore : yearStart;
+        logger.info("Refreshing stale {} data in the background, token={}, lastSyncedAt={}, range={} ~ {}",
+                provider.name(), maskToken(token), state.getLastSyncedAt(), from, end);
+        syncInBackground(provider, from, end, token);
+        return true;
+    }
+
+    private void syncInBackground(SyncProvider<?> provider, LocalDate start, LocalDate end, String token) {
+        refresher.submitRange(provider.name() + ":" + token, start, end, (from, to) -> {
+            try {
+                syncRange(provider, from, to, token, SyncScheduler.BACKGROUND_WEIGHT, null);
+            } catch (RuntimeException e) {
+                logger.warn("Background {} sync failed, token={}", provider.name(), maskToken(token), e);
+            }
+        });
+    }
+
+    /**
+     * Returns {@code false} if {@code deadline} passed first.
+     */
+    private <P> boolean processRun(SyncProvider<P> provider, SyncCheckpoint checkpoint, String token,
+                                   Map<String, P> knownProjects, int weight, Instant deadline) {
+        String tenant = provider.name() + ":" + checkpoint.getTokenHash();
+        while (true) {
+            try (SyncPipeline pipeline = new SyncPipeline(provider.name(), tenant, weight,
+                    syncProperties.getQueueCapacity(), scheduler, metrics, profiler)) {
+                for (int i = 0; i < syncProperties.getFetchConcurrency(); i++) {
+                    fetchNext(provider, checkpoint, token, knownProjects, pipeline, deadline);
+                }
+                if (!pipeline.drainUntil(deadline)) {
+                    return false;
+                }
+            }
+            if (!profiler.timeMongo(() -> coordinator.hasOpenWork(checkpoint.getId()))) {
+                return true;
+            }
+            if (deadline != null && Instant.now().isAfter(deadline)) {
+                return false;
+            }
+            coordinator.pause();
+        }
+    }
+
+    private <P> void fetchNext(SyncProvider<P> provider, SyncCheckpoint checkpoint, String token,
+                               Map<String, P> knownProjects, SyncPipeline pipeline, Instant deadline) {
+        pipeline.fetch(() -> {
+            if (deadline != null && Instant.now().isAfter(deadline)) {
+                return;
+            }
+            SyncWorkItem item = coordinator.claim(provider.name(), checkpoint.getId());
+            if (item != null) {
+                syncProject(provider, item, token, knownProjects.get(token + ":" + item.getProjectKey()),
+                        checkpoint, pipeline);
+                fetchNext(provider, checkpoint, token, knownProjects, pipeline, deadline);
+            }
+        });
+    }
+
+    private <P> void processWorkItem(SyncProvider<P> provider, SyncWorkItem item) {
+        String token = coordinator.knownToken(item.getTokenHash());
+        if (token == null) {
+            // Forgotten since the claim; the item is released for an instance that knows the token.
+            return;
+        }
+        SyncCheckpoint checkpoint = checkpoints.attach(item.getRunId());
+        if (checkpoint == null) {
+            coordinator.complete(item);
+            return;
+        }
+        logger.info("Syncing {} project for another instance, token={}, project={}", provider.name(),
+                maskToken(token), provider.projectName(item.getProject()));
+        P known = provider.findProjectInfo(token + ":" + item.getProjectKey());
+        String tenant = provider.name() + ":" + item.getTokenHash();
+        try (SyncPipeline pipeline = new SyncPipeline(provider.name(), tenant, SyncScheduler.BACKGROUND_WEIGHT,
+                syncProperties.getQueueCapacity(), scheduler, metrics, profiler)) {
+            pipeline.fetch(() -> syncProject(provider, item, token, known, checkpoint, pipeline));
+            pipeline.drain();
+        }
+    }
+
+    private Map<String, Map<String, Object>> workItemProjects(SyncProvider<?> provider,
+                                                              List<Map<String, Object>> projects) {
+        Map<String, Map<String, Object>> items = new LinkedHashMap<>();
+        for (Map<String, Object> project : projects) {
+            String name = provider.projectName(project);
+            if (name == null || name.isBlank()) {
+                continue;
+            }
+            Map<String, Object> fields = new HashMap<>();
+            for (String field : provider.projectFields()) {
+                if (project.get(field) != null) {
+                    fields.put(field, project.get(field));
+                }
+            }
+            items.put(String.valueOf(((Number) project.get("id")).longValue()), fields);
+        }
+        return items;
+    }
+
+    /**
+     * API calls happen on the fetcher thread; writes and checkpoint updates are queued to the pipeline's writer.
+     */
+    private <P> void syncProject(SyncProvider<P> provider, SyncWorkItem item, String token, P known,
+                                 SyncCheckpoint checkpoint, SyncPipeline pipeline) {
+        String name = provider.name();
+        ProjectRun run = new ProjectRun(provider, item, token, checkpoint, pipeline);
+        String repository = run.repository();
+        if (!profiler.timeMongo(() -> checkpoints.claimProject(checkpoint, item.getProjectKey(), item.getClaimId()))) {
+            logger.info("Skipping project completed before resume: {}", repository);
+            pipeline.write(() -> profiler.timeMongo(() -> coordinator.complete(item)));
+            return;
+        }
+
+        profiler.enterProject(repository);
+        run.profile = profiler.currentProject();
+        try {
+            provider.refreshProjectInfo(run, known);
+            Map<String, String> branchHeads = metrics.timePhase(name, "branches", () -> provider.fetchBranches(run));
+            profiler.timeMongo(() -> catalog.recordHeads(name, run.token(), repository, branchHeads));
+            String fingerprint = sharedCommits.fingerprint(branchHeads);
+            String scope = SharedCommitStore.scope(run.authorId());
+            boolean covered = profiler.timeMongo(() -> sharedCommits.isCovered(name, repository, scope, fingerprint,
+                    run.start(), run.end()));
+            if (covered) {
+                pipeline.write(() -> {
+                    long reused = provider.reuseSharedCommits(run, branchHeads.keySet());
+                    logger.info("Reused shared commits for {} project: {}, commits={}", name, repository, reused);
+                });
+            } else {
+                provider.listCommits(run, branchHeads);
+                pipeline.write(() -> {
+                    profiler.timeMongo(() -> sharedCommits.recordCoverage(name, repository, scope, fingerprint,
+                            run.start(), run.end()));
+                    logger.info("Finished {} project: {}, branches={}, unique commits={}", name, repository,
+                            branchHeads.size(), run.seenShas().size());
+                });
+            }
+            pipeline.write(() -> {
+                if (profiler.timeMongo(() -> checkpoints.completeProject(checkpoint, item.getProjectKey(),
+                        run.counts()))) {
+                    profiler.timeMongo(() -> coordinator.complete(item));
+                } else {
+                    logger.warn("Lost the claim on {} project to another instance: {}", name, repository);
+                }
+                flushProgress(provider, checkpoint, run.token());
+            });
+        } finally {
+            profiler.exitProject();
+        }
+    }
+
+    /**
+     * Page through one commit listing, resuming at the checkpointed page.
+     */
+    void syncPages(ProjectRun run, String listing, CommitPages pages, Consumer<List<Map<String, Object>>> ingest) {
+        SyncCheckpoint checkpoint = run.checkpoint;
+        String checkpointKey = run.item.getProjectKey();
+        if (checkpoints.isBranchCompleted(checkpoint, checkpointKey, listing)) {
+            return;
+        }
+        int startPage = checkpoints.resumePage(checkpoint, checkpointKey, listing);
+        Set<String> listedBefore = checkpoints.listedBefore(checkpoint, checkpointKey, listing);
+        profiler.enterBranch(listing);
+        try {
+            metrics.timePhase(run.provider.name(), "commits", () -> pages.fetch(startPage,
+                    (commits, page) -> run.pipeline.write(() -> {
+                        markListedBefore(run, commits, listedBefore);
+                        ingest.accept(commits);
+                        profiler.timeMongo(() -> checkpoints.recordPage(checkpoint, checkpointKey, listing,
+                                page + 1, run.counts()));
+                    })));
+            run.pipeline.write(() -> profiler.timeMongo(
+                    () -> checkpoints.completeBranch(checkpoint, checkpointKey, listing)));
+        } finally {
+            profiler.exitBranch();
+        }
+    }
+
+    private void markListedBefore(ProjectRun run, List<Map<String, Object>> commits, Set<String> listedBefore) {
+        if (listedBefore.isEmpty()) {
+            return;
+        }
+        List<String> shas = new ArrayList<>();
+        for (Map<String, Object> commit : commits) {
+            Object sha = commit.get(run.provider.shaField());
+            if (sha != null && !run.seenShas().contains(sha.toString())) {
+                shas.add(sha.toString());
+            }
+        }
+        run.seenShas().addAll(profiler.timeMongo(() -> sharedCommits.listedUnder(run.provider.name(),
+                run.repository(), shas, listedBefore)));
+    }
+
+    /**
+     * Counts only grow while a sync runs; the exact values are written once it completes.
+     */
+    private void flushProgress(SyncProvider<?> provider, SyncCheckpoint checkpoint, String token) {
+        Map<LocalDate, Integer> counts = checkpoints.drainUnflushed(checkpoint);
+        if (counts.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, provider.dailyType());
+        counts.forEach((date, count) -> bulk.upsert(
+                new Query(Criteria.where("date").is(date.format(DATE_FORMATTER)).and("token").is(token)),
+                new Update().max("count", count)));
+        profiler.timeMongo(() -> {
+            bulk.execute();
+        });
+        heatmaps.raise(provider.name(), token, counts);
+        heatmaps.advance(provider.name(), token,
+                profiler.timeMongo(() -> syncStates.recordProgress(provider.name(), token)));
+    }
+
+    private void upsertDailyCounts(SyncProvider<?> provider, LocalDate start, LocalDate end,
+                                   Map<LocalDate, Integer> dailyCounts, String token) {
+        Query deleteQuery = new Query(Criteria.where("date")
+                .gte(start.format(DATE_FORMATTER))
+                .lte(end.format(DATE_FORMATTER))
+                .and("token").is(token));
+        mongoTemplate.remove(deleteQuery, provider.dailyType());
+
+        List<Document> docs = dailyCounts.entrySet().stream()
+                .sorted(Comparator.comparing(Map.Entry::getKey))
+                .map(entry -> new Document("token", token)
+                        .append("date", entry.getKey().format(DATE_FORMATTER))
+                        .append("count", entry.getValue()))
+                .toList();
+        if (!docs.isEmpty()) {
+            mongoTemplate.insert(docs, mongoTemplate.getCollectionName(provider.dailyType()));
+        }
+    }
+
+    private void refreshAggregates(SyncProvider<?> provider, String token, LocalDate start, LocalDate end) {
+        dayCounts.refresh(provider.name(), provider.recordType(), token, start, end);
+        catalog.refreshCounts(provider.name(), provider.recordType(), token);
+        rollups.refresh(provider.name(), provider.dailyType(), token, start, end);
+    }
+
+    private String maskToken(String token) {
+        if (token == null || token.isBlank()) {
+            return "empty";
+        }
+        int length = token.length();
+        if (length <= 8) {
+            return "****";
+        }
+        return token.substring(0, 4) + "****" + token.substring(length - 4);
+    }
+
+    interface CommitPages {
+        void fetch(int startPage, ObjIntConsumer<List<Map<String, Object>>> pageHandler);
+    }
+
+    static final class ProjectRun {
+        private final SyncProvider<?> provider;
+        private final SyncWorkItem item;
+        private final String token;
+        private final SyncCheckpoint checkpoint;
+        private final SyncPipeline pipeline;
+        private final String repository;
+        private final LocalDate start;
+        private final LocalDate end;
+        private final Set<String> seenShas = new HashSet<>();
+        private final Map<LocalDate, Integer> counts = new HashMap<>();
+        private SyncProjectProfile profile;
+
+        private ProjectRun(SyncProvider<?> provider, SyncWorkItem item, String token, SyncCheckpoint checkpoint,
+                           SyncPipeline pipeline) {
+            this.provider = provider;
+            this.item = item;
+            this.token = token;
+            this.checkpoint = checkpoint;
+            this.pipeline = pipeline;
+            this.repository = provider.projectName(item.getProject());
+            this.start = LocalDate.parse(item.getRangeStart());
+            this.end = LocalDate.parse(item.getRangeEnd());
+        }
+
+        Map<String, Object> project() {
+            return item.getProject();
+        }
+
+        long projectId() {
+            return ((Number) item.getProject().get("id")).longValue();
+        }
+
+        String repository() {
+            return repository;
+        }
+
+        String token() {
+            return token;
+        }
+
+        String authorId() {
+            return item.getAuthorId();
+        }
+
+        LocalDate start() {
+            return start;
+        }
+
+        LocalDate end() {
+            return end;
+        }
+
+        OffsetDateTime since() {
+            return start.atStartOfDay(ZoneId.systemDefault()).toOffsetDateTime();
+        }
+
+        OffsetDateTime until() {
+            return end.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toOffsetDateTime();
+        }
+
+        Set<String> seenShas() {
+            return seenShas;
+        }
+
+        Map<LocalDate, Integer> counts() {
+            return counts;
+        }
+
+        SyncProjectProfile profile() {
+            return profile;
+        }
+    }
+}
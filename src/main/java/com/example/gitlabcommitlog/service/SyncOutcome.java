@@ -0,0 +1,36 @@
+package com.example.gitlabcommitlog.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a sync with a time budget: the daily counts ingested into its range, and whether it finished or
+ * left repositories to the background sync that continues it.
+ */
+public class SyncOutcome {
+    private final Map<LocalDate, Integer> dailyCounts;
+    private final boolean complete;
+    private final List<String> pendingProjects;
+
+    public SyncOutcome(Map<LocalDate, Integer> dailyCounts, boolean complete, List<String> pendingProjects) {
+        this.dailyCounts = dailyCounts;
+        this.complete = complete;
+        this.pendingProjects = pendingProjects;
+    }
+
+    public Map<LocalDate, Integer> getDailyCounts() {
+        return dailyCounts;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Repositories not synced yet when the budget ran out, most recently active first.
+     */
+    public List<String> getPendingProjects() {
+        return pendingProjects;
+    }
+}
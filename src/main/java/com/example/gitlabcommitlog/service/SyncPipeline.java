@@ -0,0 +1,187 @@
+package com.example.gitlabcommitlog.service;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fetch tasks on the {@link SyncScheduler} hand their writes to a bounded queue drained by the run's thread.
+ */
+class SyncPipeline implements AutoCloseable {
+    private static final long POLL_MILLIS = 100;
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    private final String provider;
+    private final String tenant;
+    private final int weight;
+    private final SyncScheduler scheduler;
+    private final SyncMetrics metrics;
+    private final SyncProfiler profiler;
+    private final BlockingQueue<Runnable> queue;
+    private final Set<Thread> activeFetchers = new HashSet<>();
+    private final AtomicInteger pendingFetches = new AtomicInteger();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private final AtomicBoolean outOfTime = new AtomicBoolean();
+    private final ThreadLocal<long[]> blockedNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    SyncPipeline(String provider, String tenant, int weight, int queueCapacity, SyncScheduler scheduler,
+                 SyncMetrics metrics, SyncProfiler profiler) {
+        this.provider = provider;
+        this.tenant = tenant;
+        this.weight = weight;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.profiler = profiler;
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+        metrics.registerQueue(provider, queue);
+    }
+
+    void fetch(Runnable task) {
+        pendingFetches.incrementAndGet();
+        Runnable inRun = profiler.inCurrentRun(task);
+        try {
+            scheduler.fetch(tenant, weight, () -> {
+                long startNanos = System.nanoTime();
+                blockedNanos.get()[0] = 0;
+                synchronized (activeFetchers) {
+                    activeFetchers.add(Thread.currentThread());
+                }
+                try {
+                    if (failure.get() == null) {
+                        inRun.run();
+                    }
+                } catch (SyncDeadlineException e) {
+                    // The task stops where the run's deadline leaves it; its project stays open for later.
+                    outOfTime.set(true);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    // Under the lock, so close() cannot interrupt the worker once it moved on to another run.
+                    synchronized (activeFetchers) {
+                        activeFetchers.remove(Thread.currentThread());
+                    }
+                    long blocked = blockedNanos.get()[0];
+                    metrics.recordPipelineStage(provider, "fetch", "busy",
+                            System.nanoTime() - startNanos - blocked);
+                    metrics.recordPipelineStage(provider, "fetch", "blocked", blocked);
+                    // Last, after the failure is published, so the writer never sees the run done without it.
+                    pendingFetches.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            pendingFetches.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Once the queue stays full for a poll, the fetcher lends its worker to other tokens until the writer catches
+     * up, then waits for its token's turn again.
+     */
+    void write(Runnable task) {
+        long startNanos = System.nanoTime();
+        try {
+            if (!offer(task)) {
+                scheduler.yieldWhile(tenant, weight, () -> {
+                    while (!offer(task)) {
+                        // The writer is still behind.
+                    }
+                });
+            }
+        } finally {
+            blockedNanos.get()[0] += System.nanoTime() - startNanos;
+        }
+    }
+
+    private boolean offer(Runnable task) {
+        try {
+            if (queue.offer(task, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Sync aborted");
+        }
+        if (failure.get() != null) {
+            throw new CancellationException("Sync aborted");
+        }
+        return false;
+    }
+
+    void drain() {
+        drainUntil(null);
+    }
+
+    /**
+     * Returns {@code false} if it stopped at {@code deadline} or a fetch task gave up before it.
+     */
+    boolean drainUntil(Instant deadline) {
+        while (true) {
+            RuntimeException error = failure.get();
+            if (error != null) {
+                throw error;
+            }
+            if (deadline != null && Instant.now().isAfter(deadline)) {
+                return false;
+            }
+            long waitNanos = System.nanoTime();
+            Runnable task;
+            try {
+                task = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Sync interrupted");
+            }
+            long startNanos = System.nanoTime();
+            metrics.recordPipelineStage(provider, "write", "idle", startNanos - waitNanos);
+            if (task == null) {
+                if (pendingFetches.get() == 0 && queue.isEmpty()) {
+                    error = failure.get();
+                    if (error != null) {
+                        throw error;
+                    }
+                    return !outOfTime.get();
+                }
+                continue;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                metrics.recordPipelineStage(provider, "write", "busy", System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        failure.compareAndSet(null, new CancellationException("Sync pipeline closed"));
+        synchronized (activeFetchers) {
+            activeFetchers.forEach(Thread::interrupt);
+        }
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+        try {
+            while (hasActiveFetchers() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(POLL_MILLIS / 10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        metrics.unregisterQueue(provider, queue);
+    }
+
+    private boolean hasActiveFetchers() {
+        synchronized (activeFetchers) {
+            return !activeFetchers.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.SyncProjectProfile;
+import com.example.gitlabcommitlog.model.SyncRun;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of a single sync run. Run-level totals are atomic so that any thread working on the
+ * run can contribute; project and branch profiles are only touched by the thread fetching them, except
+ * for commit counts, which the single writer thread of the run records.
+ */
+class SyncProfile {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    private final String id = UUID.randomUUID().toString();
+    private final String provider;
+    private final String tokenHash;
+    private final LocalDate start;
+    private final LocalDate end;
+    private final Instant deadline;
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final List<SyncProjectProfile> projects = new ArrayList<>();
+
+    private final AtomicLong apiRequests = new AtomicLong();
+    private final AtomicLong apiBytes = new AtomicLong();
+    private final AtomicLong commitsSeen = new AtomicLong();
+    private final AtomicLong commitsDeduped = new AtomicLong();
+    private final AtomicLong commitsIngested = new AtomicLong();
+    private final AtomicLong rateLimitWaitNanos = new AtomicLong();
+    private final AtomicLong mongoNanos = new AtomicLong();
+    private volatile Instant rateLimitedUntil;
+
+    SyncProfile(String provider, String token, LocalDate start, LocalDate end, Instant deadline) {
+        this.provider = provider;
+        this.tokenHash = SyncProfiler.tokenHash(token);
+        this.start = start;
+        this.end = end;
+        this.deadline = deadline;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String getProvider() {
+        return provider;
+    }
+
+    Instant getDeadline() {
+        return deadline;
+    }
+
+    SyncProjectProfile addProject(String name) {
+        SyncProjectProfile project = new SyncProjectProfile();
+        project.setName(name);
+        synchronized (projects) {
+            projects.add(project);
+        }
+        return project;
+    }
+
+    void addApiRequest() {
+        apiRequests.incrementAndGet();
+    }
+
+    void addApiBytes(long bytes) {
+        apiBytes.addAndGet(bytes);
+    }
+
+    void addCommits(long seen, long deduped, long ingested) {
+        commitsSeen.addAndGet(seen);
+        commitsDeduped.addAndGet(deduped);
+        commitsIngested.addAndGet(ingested);
+    }
+
+    void addRateLimitWait(long nanos) {
+        rateLimitWaitNanos.addAndGet(nanos);
+    }
+
+    /**
+     * When the token's rate limit stopped the run, the time it resets at; {@code null} otherwise.
+     */
+    Instant getRateLimitedUntil() {
+        return rateLimitedUntil;
+    }
+
+    synchronized void markRateLimited(Instant resetAt) {
+        if (rateLimitedUntil == null || resetAt.isAfter(rateLimitedUntil)) {
+            rateLimitedUntil = resetAt;
+        }
+    }
+
+    void addMongo(long nanos) {
+        mongoNanos.addAndGet(nanos);
+    }
+
+    SyncRun toRun(String status, String error) {
+        SyncRun run = new SyncRun();
+        run.setId(id);
+        run.setProvider(provider);
+        run.setTokenHash(tokenHash);
+        run.setRangeStart(start.format(DATE_FORMATTER));
+        run.setRangeEnd(end.format(DATE_FORMATTER));
+        run.setStartedAt(startedAt);
+        run.setStatus(status);
+        run.setError(error);
+        run.setWallMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        run.setApiRequests(apiRequests.get());
+        run.setApiBytes(apiBytes.get());
+        run.setCommitsSeen(commitsSeen.get());
+        run.setCommitsDeduped(commitsDeduped.get());
+        run.setCommitsIngested(commitsIngested.get());
+        run.setRateLimitWaitMillis(TimeUnit.NANOSECONDS.toMillis(rateLimitWaitNanos.get()));
+        run.setMongoMillis(TimeUnit.NANOSECONDS.toMillis(mongoNanos.get()));
+        synchronized (projects) {
+            run.setProjects(new ArrayList<>(projects));
+        }
+        if (!"running".equals(status)) {
+            run.setFinishedAt(Instant.now());
+        }
+        return run;
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.SyncBranchProfile;
+import com.example.gitlabcommitlog.model.SyncProjectProfile;
+import com.example.gitlabcommitlog.model.SyncRun;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Records a structured execution profile for each sync run into {@code sync_runs}. The profile of the
+ * run in progress is bound to the current thread so that API clients can attribute requests and bytes
+ * to the project and branch being processed without threading it through every call.
+ */
+@Component
+public class SyncProfiler {
+    private static final Logger logger = LoggerFactory.getLogger(SyncProfiler.class);
+    private static final ThreadLocal<Scope> SCOPE = new ThreadLocal<>();
+
+    private final MongoTemplate mongoTemplate;
+
+    public SyncProfiler(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Start profiling a run on the calling thread; {@code deadline}, if not {@code null}, bounds the waits of
+     * its API requests.
+     */
+    SyncProfile start(String provider, String token, LocalDate start, LocalDate end, Instant deadline) {
+        SyncProfile profile = new SyncProfile(provider, token, start, end, deadline);
+        mongoTemplate.save(profile.toRun("running", null));
+        SCOPE.set(new Scope(profile));
+        return profile;
+    }
+
+    void finish(SyncProfile profile, Throwable error) {
+        SCOPE.remove();
+        String status = error == null ? "completed" : "failed";
+        String message = error == null ? null : error.getClass().getSimpleName() + ": " + error.getMessage();
+        try {
+            mongoTemplate.save(profile.toRun(status, message));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to persist sync profile, run={}", profile.getId(), e);
+        }
+    }
+
+    void enterProject(String name) {
+        Scope scope = SCOPE.get();
+        if (scope == null) {
+            return;
+        }
+        scope.project = scope.profile.addProject(name);
+        scope.projectStartNanos = System.nanoTime();
+    }
+
+    void exitProject() {
+        Scope scope = SCOPE.get();
+        if (scope == null || scope.project == null) {
+            return;
+        }
+        scope.project.setWallMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scope.projectStartNanos));
+        scope.project = null;
+        scope.branch = null;
+    }
+
+    void enterBranch(String name) {
+        Scope scope = SCOPE.get();
+        if (scope == null || scope.project == null) {
+            return;
+        }
+        SyncBranchProfile branch = new SyncBranchProfile();
+        branch.setName(name);
+        scope.project.getBranches().add(branch);
+        scope.branch = branch;
+        scope.branchStartNanos = System.nanoTime();
+    }
+
+    void exitBranch() {
+        Scope scope = SCOPE.get();
+        if (scope == null || scope.branch == null) {
+            return;
+        }
+        scope.branch.setWallMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scope.branchStartNanos));
+        scope.branch = null;
+    }
+
+    public void recordApiRequest() {
+        Scope scope = SCOPE.get();
+        if (scope == null) {
+            return;
+        }
+        scope.profile.addApiRequest();
+        if (scope.project != null) {
+            scope.project.setApiRequests(scope.project.getApiRequests() + 1);
+        }
+        if (scope.branch != null) {
+            scope.branch.setApiRequests(scope.branch.getApiRequests() + 1);
+        }
+    }
+
+    public void recordResponseBytes(long bytes) {
+        Scope scope = SCOPE.get();
+        if (scope == null) {
+            return;
+        }
+        scope.profile.addApiBytes(bytes);
+        if (scope.project != null) {
+            scope.project.setApiBytes(scope.project.getApiBytes() + bytes);
+        }
+        if (scope.branch != null) {
+            scope.branch.setApiBytes(scope.branch.getApiBytes() + bytes);
+        }
+    }
+
+    public void recordRateLimitWait(long nanos) {
+        Scope scope = SCOPE.get();
+        if (scope != null) {
+            scope.profile.addRateLimitWait(nanos);
+        }
+    }
+
+    /**
+     * Marks the run bound to the calling thread as stopped by its token's rate limit until {@code resetAt}.
+     */
+    void recordRateLimitExhausted(Instant resetAt) {
+        Scope scope = SCOPE.get();
+        if (scope != null) {
+            scope.profile.markRateLimited(resetAt);
+        }
+    }
+
+    /**
+     * Run {@code task} on another thread as part of the run bound to the calling thread, with its own
+     * project and branch position.
+     */
+    Runnable inCurrentRun(Runnable task) {
+        Scope scope = SCOPE.get();
+        if (scope == null) {
+            return task;
+        }
+        SyncProfile profile = scope.profile;
+        return () -> {
+            SCOPE.set(new Scope(profile));
+            try {
+                task.run();
+            } finally {
+                SCOPE.remove();
+            }
+        };
+    }
+
+    /**
+     * Run {@code task} on another thread on behalf of the calling thread, attributed to its current project
+     * and branch.
+     */
+    <T> Callable<T> onBehalfOfCurrent(Callable<T> task) {
+        Scope scope = SCOPE.get();
+        if (scope == null) {
+            return task;
+        }
+        Scope borrowed = new Scope(scope.profile);
+        borrowed.project = scope.project;
+        borrowed.branch = scope.branch;
+        return () -> {
+            SCOPE.set(borrowed);
+            try {
+                return task.call();
+            } finally {
+                SCOPE.remove();
+            }
+        };
+    }
+
+    Instant currentDeadline() {
+        Scope scope = SCOPE.get();
+        return scope == null ? null : scope.profile.getDeadline();
+    }
+
+    SyncProjectProfile currentProject() {
+        Scope scope = SCOPE.get();
+        return scope == null ? null : scope.project;
+    }
+
+    /**
+     * Attribute commits to a project captured with {@link #currentProject()}, for writes that happen away
+     * from the thread processing the project.
+     */
+    void recordCommits(SyncProjectProfile project, long seen, long deduped, long ingested) {
+        Scope scope = SCOPE.get();
+        if (scope == null) {
+            return;
+        }
+        scope.profile.addCommits(seen, deduped, ingested);
+        if (project != null) {
+            project.setCommitsSeen(project.getCommitsSeen() + seen);
+            project.setCommitsDeduped(project.getCommitsDeduped() + deduped);
+        }
+    }
+
+    <T> T timeMongo(Supplier<T> action) {
+        long startNanos = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            Scope scope = SCOPE.get();
+            if (scope != null) {
+                scope.profile.addMongo(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    void timeMongo(Runnable action) {
+        timeMongo(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public List<SyncRun> findRecent(String provider, String token, int limit) {
+        if (token == null || token.isBlank()) {
+            return List.of();
+        }
+        Query query = new Query(Criteria.where("tokenHash").is(tokenHash(token)).and("provider").is(provider))
+                .with(Sort.by(Sort.Direction.DESC, "startedAt"))
+                .limit(Math.min(Math.max(limit, 1), 100));
+        return mongoTemplate.find(query, SyncRun.class);
+    }
+
+    /**
+     * Replace the raw token of runs recorded before runs were keyed by its hash.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void hashStoredTokens() {
+        Query legacy = new Query(Criteria.where("token").exists(true));
+        legacy.fields().include("token");
+        try {
+            long updated = 0;
+            for (Document run : mongoTemplate.find(legacy, Document.class, "sync_runs")) {
+                Object token = run.get("token");
+                Update update = new Update().unset("token");
+                if (token != null) {
+                    update.set("tokenHash", tokenHash(token.toString()));
+                }
+                mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(run.get("_id"))), update, "sync_runs");
+                updated++;
+            }
+            if (updated > 0) {
+                logger.info("Replaced raw tokens of sync runs, runs={}", updated);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to replace raw tokens of sync runs", e);
+        }
+    }
+
+    public static String tokenHash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class Scope {
+        private final SyncProfile profile;
+        private SyncProjectProfile project;
+        private SyncBranchProfile branch;
+        private long projectStartNanos;
+        private long branchStartNanos;
+
+        private Scope(SyncProfile profile) {
+            this.profile = profile;
+        }
+    }
+}
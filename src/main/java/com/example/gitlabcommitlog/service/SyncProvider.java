@@ -0,0 +1,46 @@
+package com.example.gitlabcommitlog.service;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provider-specific steps of a sync run driven by {@link SyncOrchestrator}; {@code P} is the provider's
+ * stored project metadata.
+ */
+interface SyncProvider<P> {
+    String name();
+
+    Class<?> recordType();
+
+    Class<?> dailyType();
+
+    String shaField();
+
+    List<String> projectFields();
+
+    /**
+     * Repository name of a listed project, or {@code null} if it has none and is skipped.
+     */
+    String projectName(Map<String, Object> project);
+
+    List<Map<String, Object>> fetchProjects(String token, OffsetDateTime activeSince);
+
+    String fetchAuthorIdentity(String token);
+
+    Map<String, P> loadProjectInfos(String token);
+
+    P findProjectInfo(String projectKey);
+
+    void refreshProjectInfo(SyncOrchestrator.ProjectRun run, P known);
+
+    Map<String, String> fetchBranches(SyncOrchestrator.ProjectRun run);
+
+    long reuseSharedCommits(SyncOrchestrator.ProjectRun run, Collection<String> branches);
+
+    /**
+     * List and ingest the project's commits through {@link SyncOrchestrator#syncPages}.
+     */
+    void listCommits(SyncOrchestrator.ProjectRun run, Map<String, String> branchHeads);
+}
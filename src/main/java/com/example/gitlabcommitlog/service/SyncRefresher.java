@@ -0,0 +1,126 @@
+package com.example.gitlabcommitlog.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs the background refreshes of stale tokens and the continuations of partial syncs off the request threads,
+ * at most one per token at a time.
+ */
+@Component
+public class SyncRefresher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SyncRefresher.class);
+    private static final int THREADS = 2;
+
+    /**
+     * Keys with a refresh queued or running, each with the range to sync once it is done, if any.
+     */
+    private final Map<String, FollowUp> running = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS, task -> {
+        Thread thread = new Thread(task, "sync-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Queue {@code refresh} unless a refresh with the same key is queued or running. Returns whether it was
+     * queued.
+     */
+    public boolean submit(String key, Runnable refresh) {
+        if (running.putIfAbsent(key, new FollowUp()) != null) {
+            return false;
+        }
+        return start(key, refresh);
+    }
+
+    /**
+     * Sync [start, end] through {@code sync}. If a refresh with the same key is queued or running, the range is
+     * merged into the one synced right after it, so the range is never dropped.
+     */
+    public void submitRange(String key, LocalDate start, LocalDate end, BiConsumer<LocalDate, LocalDate> sync) {
+        FollowUp idle = new FollowUp();
+        FollowUp current = running.compute(key, (ignored, followUp) -> followUp == null ? idle
+                : followUp.merge(start, end, sync));
+        if (current == idle) {
+            start(key, () -> sync.accept(start, end));
+        }
+    }
+
+    public boolean isRunning(String key) {
+        return running.containsKey(key);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private boolean start(String key, Runnable refresh) {
+        try {
+            executor.execute(() -> run(key, refresh));
+            return true;
+        } catch (RejectedExecutionException e) {
+            running.remove(key);
+            return false;
+        }
+    }
+
+    private void run(String key, Runnable refresh) {
+        Runnable next = refresh;
+        try {
+            while (next != null) {
+                try {
+                    next.run();
+                } catch (RuntimeException e) {
+                    // Keys carry tokens, so callers log their own failures with the token masked.
+                    logger.warn("Background refresh failed", e);
+                }
+                next = takeFollowUp(key);
+            }
+        } finally {
+            if (next != null) {
+                running.remove(key);
+            }
+        }
+    }
+
+    /**
+     * The merged range to sync next, or {@code null} after releasing the key when there is none.
+     */
+    private Runnable takeFollowUp(String key) {
+        Runnable[] next = new Runnable[1];
+        running.computeIfPresent(key, (ignored, followUp) -> {
+            if (followUp.sync == null) {
+                return null;
+            }
+            LocalDate start = followUp.start;
+            LocalDate end = followUp.end;
+            BiConsumer<LocalDate, LocalDate> sync = followUp.sync;
+            next[0] = () -> sync.accept(start, end);
+            return new FollowUp();
+        });
+        return next[0];
+    }
+
+    private static final class FollowUp {
+        private LocalDate start;
+        private LocalDate end;
+        private BiConsumer<LocalDate, LocalDate> sync;
+
+        private FollowUp merge(LocalDate from, LocalDate to, BiConsumer<LocalDate, LocalDate> next) {
+            start = start == null || from.isBefore(start) ? from : start;
+            end = end == null || to.isAfter(end) ? to : end;
+            sync = next;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.config.SyncProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sync run pool and the shared fetch workers, which take tasks by weighted fair queueing between tenants (one
+ * per token): each task advances its tenant's virtual time by 1/weight and the tenant furthest behind goes next.
+ * A tenant runs at most {@code fetch-concurrency} tasks at once, and a task waiting on its run's writer lends its
+ * worker to the other tenants until it can go on.
+ */
+@Component
+public class SyncScheduler implements AutoCloseable {
+    public static final int BACKGROUND_WEIGHT = 1;
+    private static final Logger logger = LoggerFactory.getLogger(SyncScheduler.class);
+    private static final int RUN_QUEUE_CAPACITY = 64;
+
+    private final SyncProperties syncProperties;
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    private final Set<Thread> workers = new HashSet<>();
+    private final AtomicInteger workerIndex = new AtomicInteger();
+    private final int maxInFlight;
+    private final ExecutorService runs;
+    private double virtualTime;
+    private boolean closed;
+
+    public SyncScheduler(SyncProperties syncProperties) {
+        this.syncProperties = syncProperties;
+        this.maxInFlight = Math.max(syncProperties.getFetchConcurrency(), 1);
+        synchronized (tenants) {
+            for (int i = 0; i < Math.max(syncProperties.getFetchThreads(), 1); i++) {
+                startWorker();
+            }
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        int runThreads = Math.max(syncProperties.getMaxConcurrentRuns(), 1);
+        this.runs = new ThreadPoolExecutor(runThreads, runThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(RUN_QUEUE_CAPACITY), task -> {
+                    Thread thread = new Thread(task, "sync-run-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public int interactiveWeight() {
+        return Math.max(syncProperties.getInteractiveWeight(), 1);
+    }
+
+    /**
+     * Throws {@link RejectedExecutionException} when the pool and its queue are full.
+     */
+    public <T> CompletableFuture<T> run(Supplier<T> sync) {
+        return CompletableFuture.supplyAsync(sync, runs);
+    }
+
+    public void fetch(String tenant, int weight, Runnable task) {
+        synchronized (tenants) {
+            if (closed) {
+                throw new RejectedExecutionException("Sync scheduler is closed");
+            }
+            tenants.computeIfAbsent(tenant, key -> new Tenant(key, virtualTime)).queue(weight, task);
+            tenants.notify();
+        }
+    }
+
+    /**
+     * Run {@code wait} from a fetch task of {@code tenant} with its worker handed to the other tenants meanwhile;
+     * afterwards the task queues for its tenant's next turn before it goes on. Outside a fetch worker it just
+     * runs {@code wait}.
+     */
+    public void yieldWhile(String tenant, int weight, Runnable wait) {
+        Tenant yielding;
+        synchronized (tenants) {
+            yielding = tenants.get(tenant);
+            if (yielding == null || !workers.contains(Thread.currentThread()) || closed) {
+                yielding = null;
+            } else {
+                yielding.running--;
+                yielding.parked++;
+                startWorker();
+                tenants.notify();
+            }
+        }
+        if (yielding == null) {
+            wait.run();
+            return;
+        }
+        try {
+            wait.run();
+        } finally {
+            awaitTurn(yielding, weight);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (tenants) {
+            closed = true;
+            tenants.notifyAll();
+            workers.forEach(Thread::interrupt);
+        }
+        runs.shutdownNow();
+    }
+
+    private void awaitTurn(Tenant tenant, int weight) {
+        Resume resume = new Resume(tenant);
+        synchronized (tenants) {
+            if (closed) {
+                return;
+            }
+            tenant.queue(weight, resume);
+            tenants.notify();
+        }
+        try {
+            resume.turn.await();
+        } catch (InterruptedException e) {
+            // Closing; the worker loop ends once the task returns.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startWorker() {
+        Thread worker = new Thread(this::work, "sync-fetch-" + workerIndex.incrementAndGet());
+        worker.setDaemon(true);
+        workers.add(worker);
+        worker.start();
+    }
+
+    private void work() {
+        while (true) {
+            Tenant tenant;
+            Runnable task;
+            synchronized (tenants) {
+                while ((tenant = next()) == null) {
+                    if (closed) {
+                        return;
+                    }
+                    try {
+                        tenants.wait();
+                    } catch (InterruptedException e) {
+                        if (closed) {
+                            return;
+                        }
+                    }
+                }
+                task = tenant.tasks.poll();
+                virtualTime = tenant.virtualTime;
+                tenant.virtualTime += 1.0 / tenant.weight;
+                tenant.running++;
+                if (task instanceof Resume resume) {
+                    // The yielded task takes this worker's place, running for its tenant.
+                    resume.tenant.parked--;
+                    workers.remove(Thread.currentThread());
+                    resume.turn.countDown();
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.warn("Sync fetch task failed", e);
+            } finally {
+                // A task interrupted on cancellation must not leave the flag set for the next tenant's task.
+                Thread.interrupted();
+                synchronized (tenants) {
+                    tenant.running--;
+                    if (tenant.running == 0 && tenant.parked == 0 && tenant.tasks.isEmpty()) {
+                        tenants.remove(tenant.key);
+                    }
+                }
+            }
+        }
+    }
+
+    private Tenant next() {
+        Tenant next = null;
+        for (Tenant tenant : tenants.values()) {
+            if (!tenant.tasks.isEmpty() && tenant.running < maxInFlight
+                    && (next == null || tenant.virtualTime < next.virtualTime)) {
+                next = tenant;
+            }
+        }
+        return next;
+    }
+
+    private static final class Tenant {
+        private final String key;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private double virtualTime;
+        private int weight = BACKGROUND_WEIGHT;
+        private int running;
+        private int parked;
+
+        private Tenant(String key, double virtualTime) {
+            this.key = key;
+            this.virtualTime = virtualTime;
+        }
+
+        private void queue(int weight, Runnable task) {
+            // The heaviest weight queued wins, so a background refresh joining an interactive sync does not slow it.
+            this.weight = Math.max(this.weight, Math.max(weight, 1));
+            tasks.add(task);
+        }
+    }
+
+    /**
+     * Queued by a task that yielded its worker; the worker taking it hands its place back to that task.
+     */
+    private static final class Resume implements Runnable {
+        private final Tenant tenant;
+        private final CountDownLatch turn = new CountDownLatch(1);
+
+        private Resume(Tenant tenant) {
+            this.tenant = tenant;
+        }
+
+        @Override
+        public void run() {
+            turn.countDown();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.SyncRun;
+import com.example.gitlabcommitlog.model.SyncState;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * One {@link SyncState} per token; every version written here is pushed to the {@link SyncVersionTracker}.
+ */
+@Component
+public class SyncStateStore {
+    private final MongoTemplate mongoTemplate;
+    private final SyncVersionTracker syncVersions;
+
+    public SyncStateStore(MongoTemplate mongoTemplate, SyncVersionTracker syncVersions) {
+        this.mongoTemplate = mongoTemplate;
+        this.syncVersions = syncVersions;
+    }
+
+    /**
+     * Tokens synced before sync states existed get one seeded from their latest completed run.
+     */
+    public SyncState get(String provider, Class<?> recordType, String token) {
+        SyncState state = find(provider, token);
+        if (state != null || !mongoTemplate.exists(new Query(Criteria.where("token").is(token)), recordType)) {
+            return state;
+        }
+        Query latestRun = new Query(Criteria.where("provider").is(provider)
+                .and("tokenHash").is(SyncProfiler.tokenHash(token))
+                .and("status").is("completed"))
+                .with(Sort.by(Sort.Direction.DESC, "finishedAt"))
+                .limit(1);
+        SyncRun run = mongoTemplate.findOne(latestRun, SyncRun.class);
+        Update update = new Update()
+                .setOnInsert("provider", provider)
+                .setOnInsert("tokenHash", SyncProfiler.tokenHash(token))
+                .setOnInsert("status", SyncState.IDLE)
+                .setOnInsert("lastSyncedAt", run == null || run.getFinishedAt() == null
+                        ? Instant.EPOCH : run.getFinishedAt())
+                .setOnInsert("version", 1L)
+                .setOnInsert("versionedAt", Instant.now());
+        if (run != null) {
+            update.setOnInsert("rangeStart", run.getRangeStart()).setOnInsert("rangeEnd", run.getRangeEnd());
+        }
+        return moveVersion(provider, token, update);
+    }
+
+    public SyncState find(String provider, String token) {
+        return mongoTemplate.findById(id(provider, token), SyncState.class);
+    }
+
+    public void markStarted(String provider, String token) {
+        mongoTemplate.upsert(byId(provider, token), new Update()
+                .setOnInsert("provider", provider)
+                .setOnInsert("tokenHash", SyncProfiler.tokenHash(token))
+                .set("status", SyncState.SYNCING)
+                .set("lastStartedAt", Instant.now()), SyncState.class);
+    }
+
+    /**
+     * Move the version for daily counts raised while the sync runs, so conditional reads show the progress.
+     */
+    public long recordProgress(String provider, String token) {
+        return versionOf(moveVersion(provider, token, new Update()
+                .setOnInsert("provider", provider)
+                .setOnInsert("tokenHash", SyncProfiler.tokenHash(token))
+                .inc("version", 1L)
+                .set("versionedAt", Instant.now())));
+    }
+
+    /**
+     * Returns the version written.
+     */
+    public long finish(String provider, String token, LocalDate start, LocalDate end, Throwable error) {
+        Update update = new Update()
+                .setOnInsert("provider", provider)
+                .setOnInsert("tokenHash", SyncProfiler.tokenHash(token))
+                .inc("version", 1L)
+                .set("versionedAt", Instant.now());
+        if (error == null) {
+            update.set("status", SyncState.IDLE)
+                    .set("lastSyncedAt", Instant.now())
+                    .min("rangeStart", start.toString())
+                    .max("rangeEnd", end.toString())
+                    .unset("lastError");
+        } else {
+            update.set("status", SyncState.FAILED)
+                    .set("lastError", error.getMessage() == null ? error.getClass().getName() : error.getMessage());
+        }
+        return versionOf(moveVersion(provider, token, update));
+    }
+
+    /**
+     * A sync that ran out of its budget moves the version but does not date the data.
+     */
+    public long finishPartial(String provider, String token) {
+        return versionOf(moveVersion(provider, token, new Update()
+                .setOnInsert("provider", provider)
+                .setOnInsert("tokenHash", SyncProfiler.tokenHash(token))
+                .inc("version", 1L)
+                .set("versionedAt", Instant.now())
+                .set("status", SyncState.PARTIAL)));
+    }
+
+    /**
+     * A sync running for longer than {@code freshness} is assumed to have died with its instance.
+     */
+    public boolean isStale(SyncState state, Duration freshness) {
+        Instant threshold = Instant.now().minus(freshness);
+        if (SyncState.SYNCING.equals(state.getStatus()) && state.getLastStartedAt() != null
+                && state.getLastStartedAt().isAfter(threshold)) {
+            return false;
+        }
+        return state.getLastSyncedAt() == null || state.getLastSyncedAt().isBefore(threshold);
+    }
+
+    public boolean claimRefresh(String provider, String token, Duration freshness) {
+        Instant now = Instant.now();
+        Instant threshold = now.minus(freshness);
+        Query query = new Query(new Criteria().andOperator(
+                Criteria.where("_id").is(id(provider, token)),
+                new Criteria().orOperator(Criteria.where("lastSyncedAt").exists(false),
+                        Criteria.where("lastSyncedAt").lt(threshold)),
+                new Criteria().orOperator(Criteria.where("refreshClaimedAt").exists(false),
+                        Criteria.where("refreshClaimedAt").lt(threshold))));
+        return mongoTemplate.findAndModify(query, new Update().set("refreshClaimedAt", now), SyncState.class) != null;
+    }
+
+    private SyncState moveVersion(String provider, String token, Update update) {
+        SyncState state = mongoTemplate.findAndModify(byId(provider, token), update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true), SyncState.class);
+        if (state != null) {
+            syncVersions.record(provider, token, state.getVersion());
+        }
+        return state;
+    }
+
+    private long versionOf(SyncState state) {
+        return state == null ? 0 : state.getVersion();
+    }
+
+    private Query byId(String provider, String token) {
+        return new Query(Criteria.where("_id").is(id(provider, token)));
+    }
+
+    private String id(String provider, String token) {
+        return provider + ":" + SyncProfiler.tokenHash(token);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.SyncState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Data version per token, so read endpoints answer conditional requests without querying Mongo. Versions
+ * moved on other instances show within {@link #POLL_INTERVAL_MILLIS}.
+ */
+@Component
+public class SyncVersionTracker implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SyncVersionTracker.class);
+    private static final long POLL_INTERVAL_MILLIS = 2000;
+    private static final long IDLE_EXPIRY_MILLIS = 600_000;
+    /**
+     * Overlap of consecutive polls, covering clock differences between the instances that write the states.
+     */
+    private static final Duration CLOCK_SLACK = Duration.ofSeconds(5);
+
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, TrackedVersion> versions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService poller;
+    private volatile Instant polledAt = Instant.now();
+
+    public SyncVersionTracker(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+        this.poller = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "sync-version-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public long currentVersion(String provider, String token) {
+        if (token == null || token.isBlank()) {
+            return 0L;
+        }
+        TrackedVersion tracked = versions.computeIfAbsent(key(provider, token),
+                key -> new TrackedVersion(loadVersion(key)));
+        tracked.readAt = System.currentTimeMillis();
+        return tracked.version;
+    }
+
+    public void record(String provider, String token, long version) {
+        if (token == null || token.isBlank()) {
+            return;
+        }
+        versions.computeIfPresent(key(provider, token), (key, tracked) -> tracked.moveTo(version));
+    }
+
+    /**
+     * Build an ETag from the token's current version and the parts that identify the response. The tag is
+     * weak because the servlet container only compresses responses whose validators are not strong.
+     */
+    public String etag(String provider, String token, Object... parts) {
+        StringBuilder source = new StringBuilder(provider).append('|').append(token).append('|')
+                .append(currentVersion(provider, token));
+        for (Object part : parts) {
+            source.append('|').append(part);
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(source.toString().getBytes(StandardCharsets.UTF_8));
+            return "W/\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+    }
+
+    void poll() {
+        Instant started = Instant.now();
+        try {
+            if (!versions.isEmpty()) {
+                Query query = new Query(Criteria.where("versionedAt").gte(polledAt.minus(CLOCK_SLACK)));
+                query.fields().include("version");
+                for (SyncState state : mongoTemplate.find(query, SyncState.class)) {
+                    versions.computeIfPresent(state.getId(), (key, tracked) -> tracked.moveTo(state.getVersion()));
+                }
+            }
+            polledAt = started;
+        } catch (RuntimeException e) {
+            logger.warn("Failed to poll sync versions", e);
+        }
+        long idleSince = System.currentTimeMillis() - IDLE_EXPIRY_MILLIS;
+        versions.values().removeIf(tracked -> tracked.readAt < idleSince);
+    }
+
+    private long loadVersion(String key) {
+        SyncState state = mongoTemplate.findById(key, SyncState.class);
+        return state == null ? 0L : state.getVersion();
+    }
+
+    /**
+     * The id of the token's {@link SyncState}.
+     */
+    private String key(String provider, String token) {
+        return provider + ":" + SyncProfiler.tokenHash(token);
+    }
+
+    private static final class TrackedVersion {
+        private volatile long version;
+        private volatile long readAt = System.currentTimeMillis();
+
+        private TrackedVersion(long version) {
+            this.version = version;
+        }
+
+        private TrackedVersion moveTo(long next) {
+            if (next > version) {
+                version = next;
+            }
+            return this;
+        }
+    }
+}
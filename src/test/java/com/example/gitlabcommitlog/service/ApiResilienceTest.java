@@ -0,0 +1,212 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.config.ApiResilienceProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class ApiResilienceTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+    private static final URI URL = URI.create("https://api.github.com/repos/acme/app/commits");
+
+    private ApiResilienceProperties properties;
+    private SimpleMeterRegistry registry;
+    private SyncProfiler profiler;
+    private ApiResilience resilience;
+    private SyncProfile profile;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ApiResilienceProperties();
+        properties.setMaxAttempts(3);
+        properties.setInitialBackoff(Duration.ofMillis(1));
+        properties.setMaxBackoff(Duration.ofMillis(2));
+        properties.setCircuitFailureThreshold(2);
+        properties.setCircuitOpenDuration(Duration.ofSeconds(10));
+        registry = new SimpleMeterRegistry();
+        profiler = new SyncProfiler(mock(MongoTemplate.class));
+        resilience = new ApiResilience(properties, new SyncMetrics(registry), profiler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (profile != null) {
+            profiler.finish(profile, null);
+        }
+        resilience.close();
+    }
+
+    @Test
+    void serverErrorsAreRetriedUntilTheRequestSucceeds() {
+        properties.setCircuitFailureThreshold(5);
+        Calls calls = new Calls(serverError(503), serverError(503));
+
+        ResponseEntity<String> response = execute(calls);
+
+        assertEquals("ok", response.getBody());
+        assertEquals(3, calls.count());
+        assertEquals(2.0, registry.counter("sync.api.retries", "provider", "github", "endpoint", "commits",
+                "reason", "503").count());
+    }
+
+    @Test
+    void lastFailureIsThrownOnceTheAttemptsAreUsedUp() {
+        properties.setCircuitFailureThreshold(5);
+        Calls calls = new Calls(new ResourceAccessException("timeout"), new ResourceAccessException("timeout"),
+                new ResourceAccessException("timeout"));
+
+        assertThrows(ResourceAccessException.class, () -> execute(calls));
+        assertEquals(3, calls.count());
+    }
+
+    @Test
+    void clientErrorsAreNotRetried() {
+        Calls calls = new Calls(clientError(HttpStatus.NOT_FOUND, new HttpHeaders(), ""));
+
+        assertThrows(HttpClientErrorException.class, () -> execute(calls));
+        assertEquals(1, calls.count());
+    }
+
+    @Test
+    void forbiddenIsRetriedOnlyWhenItIsARateLimit() {
+        Calls rateLimited = new Calls(clientError(HttpStatus.FORBIDDEN, new HttpHeaders(),
+                "You have exceeded a secondary rate limit"));
+        assertEquals("ok", execute(rateLimited).getBody());
+        assertEquals(2, rateLimited.count());
+
+        Calls denied = new Calls(clientError(HttpStatus.FORBIDDEN, new HttpHeaders(), "Resource not accessible"));
+        assertThrows(HttpClientErrorException.class, () -> execute(denied));
+        assertEquals(1, denied.count());
+    }
+
+    @Test
+    void retryAfterBeyondTheCapFailsAtOnce() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "3600");
+        Calls calls = new Calls(clientError(HttpStatus.TOO_MANY_REQUESTS, headers, ""));
+
+        assertThrows(HttpClientErrorException.class, () -> execute(calls));
+        assertEquals(1, calls.count());
+    }
+
+    @Test
+    void exhaustedRateLimitHoldsBackTheTokensNextRequest() {
+        profile = profiler.start("github", "token", DAY, DAY, null);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-RateLimit-Remaining", "0");
+        headers.set("X-RateLimit-Reset", String.valueOf(Instant.now().plusSeconds(3600).getEpochSecond()));
+        Calls first = new Calls();
+        first.headers = headers;
+        execute(first);
+
+        Calls next = new Calls();
+        RateLimitExhaustedException exhausted = assertThrows(RateLimitExhaustedException.class,
+                () -> execute(next));
+        assertEquals(0, next.count());
+        assertTrue(exhausted.getResetAt().isAfter(Instant.now().plusSeconds(3500)));
+        assertEquals(exhausted.getResetAt(), profile.getRateLimitedUntil());
+        assertEquals("ok", resilience.execute("github", "commits", URL, "other-token", new Calls()).getBody());
+    }
+
+    @Test
+    void repeatedServerErrorsOpenTheCircuitUntilTheDeadline() {
+        Calls failing = new Calls(serverError(502), serverError(502), serverError(502));
+        profile = profiler.start("github", "token", DAY, DAY, Instant.now().plusSeconds(5));
+
+        assertThrows(SyncDeadlineException.class, () -> execute(failing));
+        assertEquals(2, failing.count());
+        assertEquals(1.0, registry.counter("sync.api.circuit.opened", "provider", "github", "host",
+                "https://api.github.com").count());
+
+        Calls next = new Calls();
+        assertThrows(SyncDeadlineException.class, () -> execute(next));
+        assertEquals(0, next.count());
+    }
+
+    @Test
+    void openCircuitClosesOnTheNextSuccess() {
+        properties.setCircuitOpenDuration(Duration.ofMillis(50));
+        properties.setMaxAttempts(2);
+        assertThrows(HttpServerErrorException.class, () -> execute(new Calls(serverError(500), serverError(500))));
+
+        assertEquals("ok", execute(new Calls()).getBody());
+
+        assertEquals("ok", execute(new Calls(serverError(500))).getBody());
+        assertEquals(1.0, registry.counter("sync.api.circuit.opened", "provider", "github", "host",
+                "https://api.github.com").count());
+    }
+
+    @Test
+    void retryThatWouldOutlastTheDeadlineRethrowsTheFailure() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "30");
+        Calls calls = new Calls(clientError(HttpStatus.TOO_MANY_REQUESTS, headers, ""));
+        profile = profiler.start("github", "token", DAY, DAY, Instant.now().plusSeconds(5));
+
+        RestClientResponseException e = assertThrows(RestClientResponseException.class, () -> execute(calls));
+        assertEquals(429, e.getStatusCode().value());
+        assertEquals(1, calls.count());
+    }
+
+    private ResponseEntity<String> execute(Calls calls) {
+        return resilience.execute("github", "commits", URL, "token", calls);
+    }
+
+    private static HttpServerErrorException serverError(int status) {
+        return HttpServerErrorException.create(HttpStatus.valueOf(status), "error", new HttpHeaders(), new byte[0],
+                StandardCharsets.UTF_8);
+    }
+
+    private static HttpClientErrorException clientError(HttpStatus status, HttpHeaders headers, String body) {
+        return HttpClientErrorException.create(status, status.getReasonPhrase(), headers,
+                body.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Fails with each of {@code failures} in turn, then answers "ok".
+     */
+    private static final class Calls implements Supplier<ResponseEntity<String>> {
+        private final RuntimeException[] failures;
+        private final AtomicInteger count = new AtomicInteger();
+        private HttpHeaders headers = new HttpHeaders();
+
+        private Calls(RuntimeException... failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public ResponseEntity<String> get() {
+            int call = count.getAndIncrement();
+            if (call < failures.length) {
+                throw failures[call];
+            }
+            return ResponseEntity.ok().headers(headers).body("ok");
+        }
+
+        int count() {
+            return count.get();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.CommitDaily;
+import com.example.gitlabcommitlog.model.CommitRollup;
+import com.example.gitlabcommitlog.service.CommitRollupStore.Granularity;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CommitRollupStoreTest {
+    private static final String DAILY = "commit_daily";
+    private static final String PREFIX = "github:" + SyncProfiler.tokenHash("token") + ":";
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulk;
+    private CommitRollupStore store;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        bulk = mock(BulkOperations.class);
+        when(mongoTemplate.getCollectionName(CommitDaily.class)).thenReturn(DAILY);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CommitRollup.class)).thenReturn(bulk);
+        store = new CommitRollupStore(mongoTemplate);
+    }
+
+    @Test
+    void refreshRewritesEveryWeekMonthAndYearTheRangeTouches() {
+        daily(Map.of("2024-02-28", 2, "2024-03-01", 3, "2024-03-04", 4));
+
+        store.refresh("github", CommitDaily.class, "token", LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 4));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(Document.class), eq(DAILY));
+        String criteria = query.getValue().getQueryObject().toString();
+        assertTrue(criteria.contains("$gte=2024-01-01"));
+        assertTrue(criteria.contains("$lte=2024-12-31"));
+        assertEquals(Map.of(
+                PREFIX + "week:2024-02-26", 5,
+                PREFIX + "week:2024-03-04", 4,
+                PREFIX + "month:2024-03-01", 7,
+                PREFIX + "year:2024-01-01", 9), upserted());
+        verify(bulk).execute();
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(CommitRollup.class));
+    }
+
+    @Test
+    void periodsLeftWithoutCommitsAreRemoved() {
+        daily(Map.of());
+
+        store.refresh("github", CommitDaily.class, "token", LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 1));
+
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removed.capture(), eq(CommitRollup.class));
+        String ids = removed.getValue().getQueryObject().toString();
+        assertTrue(ids.contains(PREFIX + "week:2024-02-26"));
+        assertTrue(ids.contains(PREFIX + "month:2024-03-01"));
+        assertTrue(ids.contains(PREFIX + "year:2024-01-01"));
+        verify(bulk, never()).execute();
+    }
+
+    @Test
+    void dailyHeatmapListsEveryDayOfTheRange() {
+        daily(Map.of("2024-03-01", 3, "2024-03-03", 1));
+
+        Map<String, Object> heatmap = store.heatmap("github", CommitDaily.class, "token", LocalDate.of(2024, 3, 1),
+                LocalDate.of(2024, 3, 3), Granularity.DAY);
+
+        assertEquals("day", heatmap.get("granularity"));
+        assertEquals(List.of(bucket("2024-03-01", 3), bucket("2024-03-02", 0), bucket("2024-03-03", 1)),
+                heatmap.get("buckets"));
+    }
+
+    @Test
+    void autoGranularityIsTheFinestThatFitsAndAlignsToWholePeriods() {
+        when(mongoTemplate.exists(any(Query.class), eq(CommitRollup.class))).thenReturn(true);
+        when(mongoTemplate.find(any(Query.class), eq(CommitRollup.class)))
+                .thenReturn(List.of(rollup("2023-01-02", 6)));
+
+        Map<String, Object> heatmap = store.heatmap("github", CommitDaily.class, "token", LocalDate.of(2023, 1, 4),
+                LocalDate.of(2024, 12, 31), null);
+
+        assertEquals("week", heatmap.get("granularity"));
+        assertEquals("2023-01-02", heatmap.get("from"));
+        assertEquals("2025-01-05", heatmap.get("to"));
+        List<?> buckets = (List<?>) heatmap.get("buckets");
+        assertEquals(bucket("2023-01-02", 6), buckets.get(0));
+        assertEquals(105, buckets.size());
+    }
+
+    @Test
+    void rangeThatFitsInDaysIsServedFromTheDailyCounts() {
+        daily(Map.of());
+
+        Map<String, Object> heatmap = store.heatmap("github", CommitDaily.class, "token", LocalDate.of(2024, 1, 1),
+                LocalDate.of(2024, 12, 31), null);
+
+        assertEquals("day", heatmap.get("granularity"));
+        assertEquals(366, ((List<?>) heatmap.get("buckets")).size());
+        verify(mongoTemplate, never()).exists(any(Query.class), eq(CommitRollup.class));
+    }
+
+    @Test
+    void missingRollupsAreBuiltFromTheStoredDailyRange() {
+        daily(Map.of("2024-03-01", 3));
+        when(mongoTemplate.findOne(any(Query.class), eq(Document.class), eq(DAILY)))
+                .thenReturn(new Document("date", "2024-03-01"));
+
+        store.heatmap("github", CommitDaily.class, "token", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31),
+                Granularity.MONTH);
+
+        assertEquals(3, upserted().get(PREFIX + "month:2024-03-01"));
+        verify(mongoTemplate, atLeastOnce()).find(any(Query.class), eq(CommitRollup.class));
+    }
+
+    private void daily(Map<String, Integer> counts) {
+        List<Document> documents = counts.entrySet().stream()
+                .map(entry -> new Document("date", entry.getKey()).append("count", entry.getValue()))
+                .toList();
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(DAILY))).thenReturn(documents);
+    }
+
+    private Map<String, Integer> upserted() {
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(bulk, atLeastOnce()).upsert(queries.capture(), updates.capture());
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < queries.getAllValues().size(); i++) {
+            Document set = updates.getAllValues().get(i).getUpdateObject().get("$set", Document.class);
+            counts.put(queries.getAllValues().get(i).getQueryObject().getString("_id"), set.getInteger("count"));
+        }
+        return counts;
+    }
+
+    private Map<String, Object> bucket(String period, int count) {
+        return Map.of("period", period, "count", count);
+    }
+
+    private CommitRollup rollup(String period, int count) {
+        CommitRollup rollup = new CommitRollup();
+        rollup.setPeriod(period);
+        rollup.setCount(count);
+        return rollup;
+    }
+}
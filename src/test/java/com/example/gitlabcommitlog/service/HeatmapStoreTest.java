@@ -0,0 +1,116 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.config.HeatmapProperties;
+import com.example.gitlabcommitlog.model.CommitDaily;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HeatmapStoreTest {
+    private static final String TOKEN = "glpat-secret-token";
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    @TempDir
+    Path dir;
+
+    private HeatmapProperties properties;
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        properties = new HeatmapProperties();
+        properties.setSnapshotPath(dir.resolve("heatmap-store.bin").toString());
+        mongoTemplate = storedCounts(Map.of(DAY, 2, DAY.plusDays(2), 5));
+    }
+
+    @Test
+    void snapshotRestoresTheCountsWithoutRawTokens() throws IOException {
+        HeatmapStore store = new HeatmapStore(mongoTemplate, properties);
+        assertArrayEquals(new int[]{2, 0, 5}, counts(store, 3));
+        store.close();
+
+        byte[] snapshot = Files.readAllBytes(dir.resolve("heatmap-store.bin"));
+        assertFalse(new String(snapshot, StandardCharsets.ISO_8859_1).contains(TOKEN));
+
+        MongoTemplate restarted = mock(MongoTemplate.class);
+        HeatmapStore restored = new HeatmapStore(restarted, properties);
+        assertArrayEquals(new int[]{2, 0, 5}, counts(restored, 3));
+        verify(restarted, never()).find(any(Query.class), eq(Document.class), any(String.class));
+        restored.close();
+    }
+
+    @Test
+    void syncAppliedInPlaceIsServedAtItsVersionWithoutReloading() {
+        HeatmapStore store = new HeatmapStore(mongoTemplate, properties);
+        counts(store, 1);
+
+        store.raise(SyncMetrics.GITHUB, TOKEN, Map.of(DAY.plusDays(1), 4));
+        store.advance(SyncMetrics.GITHUB, TOKEN, 2);
+        store.replace(SyncMetrics.GITHUB, TOKEN, DAY, DAY, Map.of(DAY, 7));
+        store.advance(SyncMetrics.GITHUB, TOKEN, 3);
+
+        assertArrayEquals(new int[]{7, 4, 5}, counts(store, 3));
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(Document.class), eq("commit_daily"));
+        store.close();
+    }
+
+    @Test
+    void countsThatMissedAVersionAreReloaded() {
+        HeatmapStore store = new HeatmapStore(mongoTemplate, properties);
+        counts(store, 1);
+
+        store.raise(SyncMetrics.GITHUB, TOKEN, Map.of(DAY.plusDays(1), 4));
+        store.advance(SyncMetrics.GITHUB, TOKEN, 3);
+
+        assertArrayEquals(new int[]{2, 0, 5}, counts(store, 3));
+        verify(mongoTemplate, times(2)).find(any(Query.class), eq(Document.class), eq("commit_daily"));
+        store.close();
+    }
+
+    @Test
+    void snapshotOfAnEarlierFormatIsDeleted() throws IOException {
+        Path snapshot = dir.resolve("heatmap-store.bin");
+        Files.write(snapshot, ("old-format github:" + TOKEN).getBytes(StandardCharsets.UTF_8));
+
+        HeatmapStore store = new HeatmapStore(mongoTemplate, properties);
+
+        assertFalse(Files.exists(snapshot));
+        assertArrayEquals(new int[]{2, 0, 5}, counts(store, 1));
+        store.close();
+    }
+
+    private int[] counts(HeatmapStore store, long version) {
+        return store.counts(SyncMetrics.GITHUB, CommitDaily.class, TOKEN, version, DAY, DAY.plusDays(2));
+    }
+
+    private static MongoTemplate storedCounts(Map<LocalDate, Integer> counts) {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getCollectionName(CommitDaily.class)).thenReturn("commit_daily");
+        List<Document> documents = counts.entrySet().stream()
+                .map(entry -> new Document("date", entry.getKey().toString()).append("count", entry.getValue()))
+                .toList();
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("commit_daily"))).thenReturn(documents);
+        return mongoTemplate;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.CommitRecord;
+import com.example.gitlabcommitlog.model.SharedCommit;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Latency benchmark of commit message search, run only with {@code -Dbenchmark.mongodb.uri=<uri>}. It seeds
+ * {@code benchmark.message-search.documents} synthetic commits (default one million) spread over ten tokens into
+ * a throwaway database that is dropped afterwards, then times the count and first page of a set of term, phrase,
+ * exclusion and filtered queries for one token and logs their latency percentiles.
+ */
+@EnabledIfSystemProperty(named = "benchmark.mongodb.uri", matches = ".+")
+class MessageSearchBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(MessageSearchBenchmarkTest.class);
+    private static final String PROVIDER = "benchmark";
+    private static final int TOKENS = 10;
+    private static final String TOKEN = "benchmark-0";
+    private static final int BATCH_SIZE = 5000;
+    private static final int REPOSITORIES = 20;
+    private static final int VOCABULARY = 5000;
+    private static final int WARMUP_RUNS = 3;
+    private static final int TIMED_RUNS = 20;
+    private static final List<String> VERBS = List.of("fix", "add", "update", "remove", "refactor", "merge",
+            "bump", "revert", "document", "optimize");
+    private static final List<String> NOUNS = List.of("parser", "cache", "login", "heatmap", "export", "build",
+            "tests", "config", "sync", "pipeline", "readme", "dependencies");
+    private static final List<String> QUERIES = List.of("fix", "heatmap", "\"fix parser\"", "cache -merge",
+            "word4321", "optimize pipeline");
+
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+    private static SharedCommitStore sharedCommits;
+
+    @BeforeAll
+    static void seed() {
+        client = MongoClients.create(System.getProperty("benchmark.mongodb.uri"));
+        mongoTemplate = new MongoTemplate(client, "message_search_benchmark_" + System.currentTimeMillis());
+        sharedCommits = new SharedCommitStore(mongoTemplate);
+        MongoPersistentEntityIndexResolver resolver =
+                new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        for (Class<?> type : List.of(SharedCommit.class, CommitRecord.class)) {
+            IndexOperations indexOps = mongoTemplate.indexOps(type);
+            resolver.resolveIndexFor(type).forEach(indexOps::ensureIndex);
+        }
+        seed(Integer.getInteger("benchmark.message-search.documents", 1_000_000));
+    }
+
+    @AfterAll
+    static void dropDatabase() {
+        if (mongoTemplate != null) {
+            mongoTemplate.getDb().drop();
+        }
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    void measureSearchLatency() {
+        Pattern repository = Pattern.compile(".*" + Pattern.quote("bench/repo-7") + ".*", Pattern.CASE_INSENSITIVE);
+        for (String text : QUERIES) {
+            measure(text, null);
+            measure(text, repository);
+        }
+        assertTrue(search("fix", null) > 0);
+    }
+
+    private static void seed(int documents) {
+        Random random = new Random(42);
+        Instant latest = LocalDate.now(ZoneOffset.UTC).atStartOfDay().toInstant(ZoneOffset.UTC);
+        long started = System.nanoTime();
+        List<SharedCommit> commits = new ArrayList<>(BATCH_SIZE);
+        List<CommitRecord> records = new ArrayList<>(BATCH_SIZE);
+        for (long i = 0; i < documents; i++) {
+            String repository = "bench/repo-" + (i % REPOSITORIES);
+            String sha = String.format("%040x", i);
+            Instant committed = latest.minus(i % 3650, ChronoUnit.DAYS).minusSeconds(i % 86_400);
+            String committedAt = committed.toString();
+            SharedCommit commit = new SharedCommit(SharedCommitStore.commitKey(PROVIDER, repository, sha), PROVIDER,
+                    repository, sha, List.of(i % 4 == 0 ? "develop" : "main"), committedAt, "author" + (i % 50),
+                    null, message(random), null);
+            commit.setCommittedTime(committed);
+            commit.setCommittedDay(SharedCommitStore.dayKey(LocalDate.ofInstant(committed, ZoneOffset.UTC)));
+            commits.add(commit);
+            String token = "benchmark-" + (i % TOKENS);
+            CommitRecord record = new CommitRecord(token + ":" + repository + ":" + sha, token, sha, repository,
+                    commit.getBranches().get(0), committedAt, commit.getAuthor(), commit.getMessage(), null);
+            record.setCommitKey(commit.getId());
+            record.setCommittedTime(committed);
+            record.setCommittedDay(commit.getCommittedDay());
+            records.add(record);
+            if (commits.size() == BATCH_SIZE) {
+                mongoTemplate.insertAll(commits);
+                mongoTemplate.insertAll(records);
+                commits.clear();
+                records.clear();
+            }
+        }
+        if (!commits.isEmpty()) {
+            mongoTemplate.insertAll(commits);
+            mongoTemplate.insertAll(records);
+        }
+        logger.info("Message search benchmark data seeded, documents={}, seconds={}", documents,
+                (System.nanoTime() - started) / 1_000_000_000L);
+    }
+
+    /**
+     * A verb and a noun most messages start with, followed by 4 to 11 words drawn from a skewed vocabulary so
+     * a few words are very common and most are rare.
+     */
+    private static String message(Random random) {
+        StringBuilder message = new StringBuilder(VERBS.get(random.nextInt(VERBS.size())))
+                .append(' ').append(NOUNS.get(random.nextInt(NOUNS.size())));
+        int words = 4 + random.nextInt(8);
+        for (int i = 0; i < words; i++) {
+            int word = (int) (Math.pow(random.nextDouble(), 3) * VOCABULARY);
+            message.append(" word").append(word);
+        }
+        return message.toString();
+    }
+
+    private void measure(String text, Pattern repository) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            search(text, repository);
+        }
+        long[] nanos = new long[TIMED_RUNS];
+        long total = 0;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long started = System.nanoTime();
+            total = search(text, repository);
+            nanos[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(nanos);
+        logger.info("Message search benchmark, query={}, filtered={}, matches={}, p50={}ms, p95={}ms, max={}ms",
+                text, repository != null, total, millis(nanos[TIMED_RUNS / 2]),
+                millis(nanos[(int) Math.ceil(TIMED_RUNS * 0.95) - 1]), millis(nanos[TIMED_RUNS - 1]));
+    }
+
+    /**
+     * One search request: the total count and the first page of 20.
+     */
+    private long search(String text, Pattern repository) {
+        long total = sharedCommits.countMessages(CommitRecord.class, TOKEN, text, repository, null);
+        sharedCommits.searchMessages(CommitRecord.class, TOKEN, text, repository, null, 0, 20);
+        return total;
+    }
+
+    private double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+}
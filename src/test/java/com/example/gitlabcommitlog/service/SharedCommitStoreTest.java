@@ -0,0 +1,32 @@
+package com.example.gitlabcommitlog.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedCommitStoreTest {
+
+    @Test
+    void dayKeysSortLikeTheirDates() {
+        assertEquals(20240301, SharedCommitStore.dayKey(LocalDate.of(2024, 3, 1)));
+        assertTrue(SharedCommitStore.dayKey(LocalDate.of(2023, 12, 31))
+                < SharedCommitStore.dayKey(LocalDate.of(2024, 1, 1)));
+    }
+
+    @Test
+    void dayKeyRoundTrips() {
+        for (LocalDate day = LocalDate.of(2023, 12, 25); day.isBefore(LocalDate.of(2024, 3, 5));
+             day = day.plusDays(1)) {
+            assertEquals(day, SharedCommitStore.fromDayKey(SharedCommitStore.dayKey(day)));
+        }
+    }
+
+    @Test
+    void scopeIsAllOrTheLowerCasedAuthor() {
+        assertEquals(SharedCommitStore.SCOPE_ALL, SharedCommitStore.scope(null));
+        assertEquals("author:jane@example.com", SharedCommitStore.scope("Jane@Example.com"));
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.ProjectCheckpoint;
+import com.example.gitlabcommitlog.model.SyncCheckpoint;
+import com.mongodb.client.result.UpdateResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SyncCheckpointStoreTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    private MongoTemplate mongoTemplate;
+    private SyncCheckpointStore store;
+    private SyncCheckpoint checkpoint;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        store = new SyncCheckpointStore(mongoTemplate);
+        checkpoint = new SyncCheckpoint();
+        checkpoint.setId("github:token:all:2024-01-01:2024-12-31");
+    }
+
+    @Test
+    void claimedProjectResumesAtItsBranchAndPage() {
+        claim(progress(List.of("main"), "develop", 4));
+
+        assertTrue(store.isBranchCompleted(checkpoint, "repo", "main"));
+        assertFalse(store.isBranchCompleted(checkpoint, "repo", "develop"));
+        assertEquals(4, store.resumePage(checkpoint, "repo", "develop"));
+        assertEquals(1, store.resumePage(checkpoint, "repo", "feature"));
+    }
+
+    @Test
+    void branchesListedBeforeTheResumeExcludeTheOneBeingReplayed() {
+        claim(progress(List.of("main"), "develop", 4));
+
+        assertEquals(Set.of("main"), store.listedBefore(checkpoint, "repo", "develop"));
+        assertEquals(Set.of("main", "develop"), store.listedBefore(checkpoint, "repo", "feature"));
+    }
+
+    @Test
+    void freshProjectHasNothingListedBefore() {
+        claim(null);
+
+        assertEquals(1, store.resumePage(checkpoint, "repo", "main"));
+        assertTrue(store.listedBefore(checkpoint, "repo", "main").isEmpty());
+    }
+
+    @Test
+    void completedProjectIsNotClaimed() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(SyncCheckpoint.class))).thenReturn(null);
+
+        assertFalse(store.claimProject(checkpoint, "repo", "claim-1"));
+    }
+
+    @Test
+    void recordedPageMovesThePositionAndAddsItsCounts() {
+        claim(progress(List.of(), null, 1));
+        updateMatches(true);
+        Map<LocalDate, Integer> counts = new HashMap<>(Map.of(DAY, 3));
+
+        assertTrue(store.recordPage(checkpoint, "repo", "main", 2, counts));
+
+        ProjectCheckpoint progress = checkpoint.getProjectsInProgress().get("repo");
+        assertEquals("main", progress.getCurrentBranch());
+        assertEquals(2, progress.getNextPage());
+        assertEquals(3, checkpoint.getDailyCounts().get("2024-03-01"));
+        assertEquals(Map.of(DAY, 3), store.drainUnflushed(checkpoint));
+        assertTrue(counts.isEmpty());
+    }
+
+    @Test
+    void pageRecordedAfterTheClaimWasLostIsDropped() {
+        claim(progress(List.of(), null, 1));
+        updateMatches(false);
+        Map<LocalDate, Integer> counts = new HashMap<>(Map.of(DAY, 3));
+
+        assertFalse(store.recordPage(checkpoint, "repo", "main", 2, counts));
+
+        assertEquals(1, checkpoint.getProjectsInProgress().get("repo").getNextPage());
+        assertTrue(checkpoint.getDailyCounts().isEmpty());
+        assertTrue(counts.isEmpty());
+    }
+
+    private void claim(ProjectCheckpoint stored) {
+        ProjectCheckpoint progress = stored != null ? stored : new ProjectCheckpoint();
+        progress.setClaim("claim-1");
+        SyncCheckpoint current = new SyncCheckpoint();
+        current.getProjectsInProgress().put("repo", progress);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(SyncCheckpoint.class))).thenReturn(current);
+        assertTrue(store.claimProject(checkpoint, "repo", "claim-1"));
+    }
+
+    private ProjectCheckpoint progress(List<String> completedBranches, String currentBranch, int nextPage) {
+        ProjectCheckpoint progress = new ProjectCheckpoint();
+        progress.getCompletedBranches().addAll(completedBranches);
+        progress.setCurrentBranch(currentBranch);
+        progress.setNextPage(nextPage);
+        return progress;
+    }
+
+    private void updateMatches(boolean matched) {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(SyncCheckpoint.class)))
+                .thenReturn(UpdateResult.acknowledged(matched ? 1 : 0, matched ? 1L : 0L, null));
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.config.SyncProperties;
+import com.example.gitlabcommitlog.model.SyncLease;
+import com.example.gitlabcommitlog.model.SyncWorkItem;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SyncCoordinatorTest {
+    private MongoTemplate mongoTemplate;
+    private SimpleMeterRegistry registry;
+    private SyncCoordinator coordinator;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        registry = new SimpleMeterRegistry();
+        SyncProperties properties = new SyncProperties();
+        properties.setLeaseTtl(Duration.ofSeconds(30));
+        properties.setWorkPollInterval(Duration.ofMillis(10));
+        coordinator = new SyncCoordinator(mongoTemplate, new SyncMetrics(registry), properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coordinator.close();
+    }
+
+    @Test
+    void leaseIsTakenWhenFreeLapsedOrOurs() {
+        assertTrue(coordinator.tryAcquire("github:token"));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), any(FindAndModifyOptions.class),
+                eq(SyncLease.class));
+        String criteria = query.getValue().getQueryObject().toString();
+        assertTrue(criteria.contains("expiresAt=Document{{$lt="));
+        assertTrue(criteria.contains("owner="));
+        Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+        assertTrue(((Instant) set.get("expiresAt")).isAfter(Instant.now().plusSeconds(25)));
+    }
+
+    @Test
+    void leaseIsHeldByOneCallerOfTheInstanceAtATime() {
+        assertTrue(coordinator.tryAcquire("github:token"));
+
+        assertFalse(coordinator.tryAcquire("github:token"));
+
+        verify(mongoTemplate, times(1)).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(SyncLease.class));
+    }
+
+    @Test
+    void leaseHeldByAnotherInstanceIsNotTaken() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(SyncLease.class))).thenThrow(new DuplicateKeyException("held"));
+
+        assertFalse(coordinator.tryAcquire("github:token"));
+        assertFalse(coordinator.awaitLease("github:token", Instant.now().minusSeconds(1)));
+    }
+
+    @Test
+    void releasedLeaseCanBeTakenAgain() {
+        assertTrue(coordinator.tryAcquire("github:token"));
+
+        coordinator.release("github:token");
+
+        assertTrue(coordinator.tryAcquire("github:token"));
+    }
+
+    @Test
+    void claimTakesPendingOrLapsedItemsLowestPriorityFirst() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(SyncWorkItem.class))).thenReturn(item(1));
+
+        SyncWorkItem item = coordinator.claim("github", "run");
+
+        assertEquals("item", item.getId());
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(query.capture(), any(Update.class), any(FindAndModifyOptions.class),
+                eq(SyncWorkItem.class));
+        String criteria = query.getValue().getQueryObject().toString();
+        assertTrue(criteria.contains("status=pending"));
+        assertTrue(criteria.contains("leaseExpiresAt=Document{{$lt="));
+        assertEquals(1, query.getValue().getSortObject().getInteger("priority"));
+        assertEquals(1.0, registry.counter("sync.work.claims", "provider", "github", "outcome", "claimed").count());
+    }
+
+    @Test
+    void reclaimedItemCountsAsTakenOver() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(SyncWorkItem.class))).thenReturn(item(2));
+        coordinator.rememberToken("token");
+
+        coordinator.claim("github", null);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(query.capture(), any(Update.class), any(FindAndModifyOptions.class),
+                eq(SyncWorkItem.class));
+        assertTrue(query.getValue().getQueryObject().toString().contains(SyncProfiler.tokenHash("token")));
+        assertEquals(1.0, registry.counter("sync.work.claims", "provider", "github", "outcome", "taken_over")
+                .count());
+    }
+
+    @Test
+    void itemsOfUnknownTokensAreLeftToOtherInstances() {
+        assertNull(coordinator.claim("github", null));
+
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(SyncWorkItem.class));
+    }
+
+    @Test
+    void nothingToClaim() {
+        assertNull(coordinator.claim("github", "run"));
+    }
+
+    @Test
+    void completingALostClaimFails() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(SyncWorkItem.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        assertFalse(coordinator.complete(item(1)));
+    }
+
+    private SyncWorkItem item(int attempts) {
+        SyncWorkItem item = new SyncWorkItem();
+        item.setId("item");
+        item.setRunId("run");
+        item.setProjectKey("repo");
+        item.setClaimId("claim");
+        item.setAttempts(attempts);
+        return item;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.config.SyncProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class SyncPipelineTest {
+    private SyncScheduler scheduler;
+    private SyncPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        SyncProperties properties = new SyncProperties();
+        properties.setFetchThreads(2);
+        scheduler = new SyncScheduler(properties);
+        pipeline = new SyncPipeline("github", "github:token", 1, 1, scheduler,
+                new SyncMetrics(new SimpleMeterRegistry()), new SyncProfiler(mock(MongoTemplate.class)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.close();
+        scheduler.close();
+    }
+
+    @Test
+    void writesRunOnTheDrainingThreadInQueueOrder() {
+        List<String> written = new CopyOnWriteArrayList<>();
+        List<Thread> writers = new CopyOnWriteArrayList<>();
+        pipeline.fetch(() -> {
+            for (int page = 1; page <= 5; page++) {
+                String write = "page-" + page;
+                pipeline.write(() -> {
+                    written.add(write);
+                    writers.add(Thread.currentThread());
+                });
+            }
+        });
+
+        assertTrue(pipeline.drainUntil(null));
+
+        assertEquals(List.of("page-1", "page-2", "page-3", "page-4", "page-5"), written);
+        assertTrue(writers.stream().allMatch(thread -> thread == Thread.currentThread()));
+    }
+
+    @Test
+    void fetchersWaitingOnAFullQueueLeaveTheWorkersToOtherTokens() throws InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            pipeline.fetch(() -> {
+                for (int page = 1; page <= 3; page++) {
+                    pipeline.write(() -> { });
+                }
+            });
+        }
+        CountDownLatch other = new CountDownLatch(1);
+        scheduler.fetch("gitlab:other", 1, other::countDown);
+
+        assertTrue(other.await(5, TimeUnit.SECONDS));
+        assertTrue(pipeline.drainUntil(null));
+    }
+
+    @Test
+    void fetcherBlocksWhileTheQueueIsFull() throws InterruptedException {
+        AtomicInteger queued = new AtomicInteger();
+        pipeline.fetch(() -> {
+            for (int page = 1; page <= 3; page++) {
+                pipeline.write(() -> { });
+                queued.incrementAndGet();
+            }
+        });
+
+        Thread.sleep(300);
+        assertEquals(1, queued.get());
+
+        pipeline.drain();
+        assertEquals(3, queued.get());
+    }
+
+    @Test
+    void firstFetchFailureIsRethrownByTheWriter() {
+        IllegalStateException failure = new IllegalStateException("boom");
+        Thread writer = Thread.currentThread();
+        CountDownLatch written = new CountDownLatch(1);
+        pipeline.fetch(() -> {
+            pipeline.write(written::countDown);
+            await(written);
+            // Fail only once the writer is parked waiting for the next write.
+            while (writer.getState() != Thread.State.TIMED_WAITING) {
+                Thread.onSpinWait();
+            }
+            throw failure;
+        });
+
+        assertSame(failure, assertThrows(IllegalStateException.class, pipeline::drain));
+    }
+
+    @Test
+    void fetchThatRanOutOfTimeLeavesTheRunIncomplete() {
+        List<String> written = new CopyOnWriteArrayList<>();
+        pipeline.fetch(() -> pipeline.write(() -> written.add("page-1")));
+        pipeline.fetch(() -> {
+            throw new SyncDeadlineException("deadline");
+        });
+
+        assertFalse(pipeline.drainUntil(null));
+        assertEquals(List.of("page-1"), written);
+    }
+
+    @Test
+    void drainStopsAtThePassedDeadline() {
+        List<String> written = new CopyOnWriteArrayList<>();
+        pipeline.fetch(() -> pipeline.write(() -> written.add("page-1")));
+
+        assertFalse(pipeline.drainUntil(Instant.now().minusSeconds(1)));
+        assertTrue(written.isEmpty());
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.gitlabcommitlog.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyncRefresherTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    private final SyncRefresher refresher = new SyncRefresher();
+
+    @AfterEach
+    void tearDown() {
+        refresher.close();
+    }
+
+    @Test
+    void secondRefreshOfARunningKeyIsRejected() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(refresher.submit("github:token", () -> await(release)));
+
+        assertFalse(refresher.submit("github:token", () -> { }));
+        assertTrue(refresher.isRunning("github:token"));
+
+        release.countDown();
+        awaitIdle("github:token");
+    }
+
+    @Test
+    void rangesSubmittedWhileRunningAreMergedAndSyncedAfterwards() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> synced = new CopyOnWriteArrayList<>();
+        refresher.submitRange("github:token", DAY, DAY, (from, to) -> {
+            await(release);
+            synced.add(from + "~" + to);
+        });
+
+        refresher.submitRange("github:token", DAY.plusDays(5), DAY.plusDays(6),
+                (from, to) -> synced.add(from + "~" + to));
+        refresher.submitRange("github:token", DAY.minusDays(2), DAY.plusDays(1),
+                (from, to) -> synced.add(from + "~" + to));
+        release.countDown();
+        awaitIdle("github:token");
+
+        assertEquals(List.of("2024-03-01~2024-03-01", "2024-02-28~2024-03-07"), synced);
+    }
+
+    @Test
+    void failedRefreshReleasesItsKey() throws InterruptedException {
+        refresher.submit("gitlab:token", () -> {
+            throw new IllegalStateException("boom");
+        });
+
+        awaitIdle("gitlab:token");
+        assertTrue(refresher.submit("gitlab:token", () -> { }));
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitIdle(String key) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (refresher.isRunning(key) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(refresher.isRunning(key));
+    }
+}
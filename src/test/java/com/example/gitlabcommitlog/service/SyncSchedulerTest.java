@@ -0,0 +1,163 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.config.SyncProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyncSchedulerTest {
+    private SyncScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        SyncProperties properties = new SyncProperties();
+        properties.setFetchThreads(1);
+        properties.setMaxConcurrentRuns(1);
+        scheduler = new SyncScheduler(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.close();
+    }
+
+    @Test
+    void tenantsOfEqualWeightTakeTurns() throws InterruptedException {
+        List<String> order = runQueued(new String[]{"big", "small"}, new int[]{1, 1}, new int[]{20, 4});
+
+        List<String> first = order.subList(0, 8);
+        assertEquals(4, Collections.frequency(first, "big"));
+        assertEquals(4, Collections.frequency(first, "small"));
+    }
+
+    @Test
+    void heavierTenantRunsProportionallyMoreTasks() throws InterruptedException {
+        List<String> order = runQueued(new String[]{"interactive", "background"}, new int[]{2, 1},
+                new int[]{12, 12});
+
+        List<String> first = order.subList(0, 9);
+        assertEquals(6, Collections.frequency(first, "interactive"));
+        assertEquals(3, Collections.frequency(first, "background"));
+    }
+
+    @Test
+    void tasksOfOneTenantRunInQueueOrder() throws InterruptedException {
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            String task = "task-" + i;
+            scheduler.fetch("tenant", 1, () -> {
+                order.add(task);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("task-0", "task-1", "task-2", "task-3", "task-4"), order);
+    }
+
+    @Test
+    void tenantRunsNoMoreThanItsFetchConcurrency() throws InterruptedException {
+        SyncProperties properties = new SyncProperties();
+        properties.setFetchThreads(2);
+        properties.setFetchConcurrency(1);
+        SyncScheduler limited = new SyncScheduler(properties);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            CountDownLatch busy = new CountDownLatch(2);
+            for (int i = 0; i < 2; i++) {
+                limited.fetch("busy", 1, () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    await(release);
+                    running.decrementAndGet();
+                    busy.countDown();
+                });
+            }
+            CountDownLatch other = new CountDownLatch(1);
+            limited.fetch("other", 1, other::countDown);
+
+            assertTrue(other.await(5, TimeUnit.SECONDS));
+            release.countDown();
+            assertTrue(busy.await(5, TimeUnit.SECONDS));
+            assertEquals(1, maxRunning.get());
+        } finally {
+            limited.close();
+        }
+    }
+
+    @Test
+    void taskWaitingOnItsWriterLendsItsWorker() throws InterruptedException {
+        CountDownLatch writerCaughtUp = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.fetch("waiting", 1, () -> {
+            scheduler.yieldWhile("waiting", 1, () -> await(writerCaughtUp));
+            done.countDown();
+        });
+        scheduler.fetch("other", 1, writerCaughtUp::countDown);
+
+        assertTrue(writerCaughtUp.await(1, TimeUnit.SECONDS));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void closedSchedulerRejectsTasks() {
+        scheduler.close();
+
+        assertThrows(RejectedExecutionException.class, () -> scheduler.fetch("tenant", 1, () -> { }));
+    }
+
+    /**
+     * Queue the tasks of every tenant while the only worker is held, then release it and record which tenant
+     * each task ran for.
+     */
+    private List<String> runQueued(String[] tenants, int[] weights, int[] counts) throws InterruptedException {
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.fetch("gate", 1, () -> {
+            held.countDown();
+            await(release);
+        });
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        CountDownLatch done = new CountDownLatch(total);
+        for (int i = 0; i < tenants.length; i++) {
+            String tenant = tenants[i];
+            for (int j = 0; j < counts[i]; j++) {
+                scheduler.fetch(tenant, weights[i], () -> {
+                    order.add(tenant);
+                    done.countDown();
+                });
+            }
+        }
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        return order;
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.gitlabcommitlog.service;
+
+import com.example.gitlabcommitlog.model.SyncState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SyncVersionTrackerTest {
+    private static final String GITHUB_ID = "github:" + SyncProfiler.tokenHash("token");
+    private static final String GITLAB_ID = "gitlab:" + SyncProfiler.tokenHash("token");
+
+    private MongoTemplate mongoTemplate;
+    private SyncVersionTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        tracker = new SyncVersionTracker(mongoTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracker.close();
+    }
+
+    @Test
+    void readsTheStoredVersionOnlyOnce() {
+        when(mongoTemplate.findById(GITHUB_ID, SyncState.class)).thenReturn(state(GITHUB_ID, 3));
+
+        assertEquals(3, tracker.currentVersion("github", "token"));
+        assertEquals(3, tracker.currentVersion("github", "token"));
+
+        verify(mongoTemplate, times(1)).findById(GITHUB_ID, SyncState.class);
+    }
+
+    @Test
+    void recordedVersionsChangeTheEtagWithoutReadingMongo() {
+        when(mongoTemplate.findById(GITHUB_ID, SyncState.class)).thenReturn(state(GITHUB_ID, 3));
+        String before = tracker.etag("github", "token", "heatmap");
+
+        tracker.record("github", "token", 4);
+        tracker.record("github", "token", 2);
+
+        assertEquals(4, tracker.currentVersion("github", "token"));
+        assertNotEquals(before, tracker.etag("github", "token", "heatmap"));
+        verify(mongoTemplate, times(1)).findById(GITHUB_ID, SyncState.class);
+    }
+
+    @Test
+    void pollPicksUpVersionsMovedElsewhere() {
+        when(mongoTemplate.findById(GITLAB_ID, SyncState.class)).thenReturn(state(GITLAB_ID, 1));
+        tracker.currentVersion("gitlab", "token");
+        when(mongoTemplate.find(any(Query.class), eq(SyncState.class)))
+                .thenReturn(List.of(state(GITLAB_ID, 7), state("gitlab:" + SyncProfiler.tokenHash("other"), 9)));
+
+        tracker.poll();
+
+        assertEquals(7, tracker.currentVersion("gitlab", "token"));
+    }
+
+    @Test
+    void pollSkipsMongoWhileNoTokenIsTracked() {
+        tracker.poll();
+
+        verify(mongoTemplate, times(0)).find(any(Query.class), eq(SyncState.class));
+    }
+
+    private SyncState state(String id, long version) {
+        SyncState state = new SyncState();
+        state.setId(id);
+        state.setVersion(version);
+        return state;
+    }
+}